@@ -28,9 +28,10 @@ public class IntraClient2 {
 	private static String METHOD="POST";
 	private static String ENDPOINT_JSON="/intravert/intrareq-json";
 	private static String ENDPOINT_SMILE="/intravert/intrareq-smile";
+	private static String ENDPOINT_JSON_STREAM="/intravert/intrareq-json-stream";
 	private String endpoint;
 	private static final String CONTENT_LENGTH="content-length";
-	public enum Transport { JSON, SMILE, XML }
+	public enum Transport { JSON, SMILE, XML, JSON_STREAM }
 	private Transport transport;
 	
 	public IntraClient2(String host,int port){
@@ -114,6 +115,10 @@ public class IntraClient2 {
 			mapper = new ObjectMapper();
 			endpoint = ENDPOINT_JSON;
 		}
+		if (transport == Transport.JSON_STREAM){
+			mapper = new ObjectMapper();
+			endpoint = ENDPOINT_JSON_STREAM;
+		}
 	}
 	
 }
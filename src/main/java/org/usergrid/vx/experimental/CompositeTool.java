@@ -15,7 +15,6 @@
 */
 package org.usergrid.vx.experimental;
 
-import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -42,40 +41,73 @@ public class CompositeTool {
   }
 
   public static byte[] makeComposite(List<byte[]> b, int[] sep) {
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    int size = 0;
+    for (byte[] component : b) {
+      size += component.length + 3;
+    }
+    byte[] composite = new byte[size];
+    int offset = 0;
     for (int i = 0; i < b.size(); i++) {
-      bos.write((byte) ((b.get(i).length >> 8) & 0xFF));
-      bos.write((byte) (b.get(i).length & 0xFF));
-      for (int j = 0; j < b.get(i).length; j++) {
-        bos.write(b.get(i)[j] & 0xFF);
-      }
-      bos.write((byte) (sep[i] & 0xFF));
+      byte[] component = b.get(i);
+      composite[offset++] = (byte) ((component.length >> 8) & 0xFF);
+      composite[offset++] = (byte) (component.length & 0xFF);
+      System.arraycopy(component, 0, composite, offset, component.length);
+      offset += component.length;
+      composite[offset++] = sep == null ? 0 : (byte) (sep[i] & 0xFF);
     }
-    return bos.toByteArray();
+    return composite;
   }
 
   public static byte[] makeComposite(List<byte[]> b) {
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    for (int i = 0; i < b.size(); i++) {
-      bos.write((byte) ((b.get(i).length >> 8) & 0xFF));
-      bos.write((byte) (b.get(i).length & 0xFF));
-      for (int j = 0; j < b.get(i).length; j++) {
-        bos.write(b.get(i)[j] & 0xFF);
-      }
-      bos.write((byte) 0);
+    return makeComposite(b, null);
+  }
+
+  /**
+   * Encodes the components into one buffer sized up front, each component is
+   * copied with a single bulk put. A null sep ends every component with 0.
+   */
+  public static ByteBuffer compose(List<ByteBuffer> components, int[] sep) {
+    int size = 0;
+    for (ByteBuffer component : components) {
+      size += component.remaining() + 3;
+    }
+    ByteBuffer composite = ByteBuffer.allocate(size);
+    for (int i = 0; i < components.size(); i++) {
+      ByteBuffer component = components.get(i);
+      composite.putShort((short) component.remaining());
+      composite.put(component.duplicate());
+      composite.put(sep == null ? 0 : (byte) sep[i]);
     }
-    return bos.toByteArray();
+    composite.flip();
+    return composite;
+  }
+
+  /**
+   * @return the components of a composite as views over its buffer, nothing
+   *         is copied
+   */
+  public static List<ByteBuffer> decompose(ByteBuffer composite) {
+    List<ByteBuffer> result = new ArrayList<ByteBuffer>();
+    ByteBuffer in = composite.duplicate();
+    while (in.remaining() > 0) {
+      int length = in.getShort() & 0xFFFF;
+      ByteBuffer component = in.slice();
+      component.limit(length);
+      result.add(component);
+      // skip the component and its end-of-component byte
+      in.position(in.position() + length + 1);
+    }
+    return result;
   }
 
   public static List<byte[]> readComposite(byte[] column) {
     List<byte[]> result = new ArrayList<byte[]>();
     for (int i = 0; i < column.length; i++) {
       int length = (column[i++] & 0xFF) << 8;
-      length = (column[i++] & 0xFF);
+      length |= (column[i++] & 0xFF);
       byte[] data = new byte[length];
-      for (int j = 0; j < length; j++) {
-        data[j] = column[i++];
-      }
+      System.arraycopy(column, i, data, 0, length);
+      i += length;
       result.add(data);
     }
     return result;
@@ -19,6 +19,8 @@ import java.io.Serializable;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.vertx.java.core.json.JsonObject;
+
 public class IntraOp implements Serializable{
 
 	public static final String COLUMN= "COLUMN";
@@ -50,6 +52,14 @@ public class IntraOp implements Serializable{
 		return type;
 	}
 
+	/**
+	 * A JsonObject view of this operation. The parameters are wrapped by
+	 * reference rather than copied so the request body is only parsed once.
+	 */
+	public JsonObject toJson() {
+		return new JsonObject().putString("type", type.toString()).putObject("op", new JsonObject(op));
+	}
+
 
   public enum Type {
     LISTCOLUMNFAMILY ,
@@ -60,6 +70,9 @@ public class IntraOp implements Serializable{
     FOREACH ,
     SLICEBYNAMES ,
     SLICE ,
+    MULTIGET ,
+    MULTISLICE ,
+    RANGESLICE ,
     COUNTER ,
     GET ,
     SET ,
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
@@ -14,6 +15,8 @@ public class IntraReq implements Serializable {
   private static final long serialVersionUID = -6101558885453116210L;
 
   private List<IntraOp> e = new ArrayList<IntraOp>();
+  private Boolean schemaTypes;
+  private Long timeout;
 
   public IntraReq() {
 
@@ -32,9 +35,58 @@ public class IntraReq implements Serializable {
     this.e = e;
   }
 
+  /**
+   * @return true to decode the results with the types of the schema, false to
+   *         leave untyped values as bytes, null for the server default
+   */
+  @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+  public Boolean getSchemaTypes() {
+    return schemaTypes;
+  }
+
+  public void setSchemaTypes(Boolean schemaTypes) {
+    this.schemaTypes = schemaTypes;
+  }
+
+  /**
+   * @return the milliseconds the whole request may take, null for the server
+   *         default
+   */
+  @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+  public Long getTimeout() {
+    return timeout;
+  }
+
+  public void setTimeout(Long timeout) {
+    this.timeout = timeout;
+  }
+
   @SuppressWarnings({ "unchecked", "rawtypes" })
   public JsonObject toJson() {
-    return new JsonObject().putArray("e", new JsonArray((List) e));
+    return withOptions(new JsonObject().putArray("e", new JsonArray((List) e)));
+  }
+
+  /**
+   * Builds the operation list handed to the request handler. Unlike
+   * {@link #toJson()} the operations are already JsonObjects backed by the
+   * parsed parameters, so no encode/parse round trip is needed to read them.
+   */
+  public JsonObject toOperationsJson() {
+    JsonArray operations = new JsonArray();
+    for (IntraOp op : e) {
+      operations.addObject(op.toJson());
+    }
+    return withOptions(new JsonObject().putArray("e", operations));
+  }
+
+  private JsonObject withOptions(JsonObject request) {
+    if (schemaTypes != null) {
+      request.putBoolean(Operations.SCHEMA_TYPES, schemaTypes);
+    }
+    if (timeout != null) {
+      request.putNumber(Operations.TIMEOUT, timeout);
+    }
+    return request;
   }
 
   public static IntraReq fromJson(JsonObject json) {
@@ -40,7 +40,15 @@ public class Operations {
   private static final String START = "start";
   private static final String END = "end";
   private static final String SIZE = "size";
-  private static final String WANTEDCOLS = "wantedcols";
+  public static final String WANTEDCOLS = "wantedcols";
+  public static final String ROWKEYS = "rowkeys";
+  public static final String PAGED = "paged";
+  public static final String CURSOR = "cursor";
+  public static final String COLUMNS = "columns";
+  public static final String REVERSED = "reversed";
+  public static final String START_TOKEN = "start_token";
+  public static final String END_TOKEN = "end_token";
+  public static final String LIMIT = "limit";
   private static final String ACTION = "action";
   private static final String REPLICATION = "replication";
   private static final String LEVEL = "level";
@@ -67,7 +75,21 @@ public class Operations {
   public static final String STATE = "state";
   public static final String OP = "op";
   public static final String TIMEOUT= "timeout";
+  /** epoch milliseconds after which the operation is not worth starting */
+  public static final String DEADLINE = "deadline";
+  /** id of the request an operation belongs to, in diagnostics */
+  public static final String TRACE = "trace";
   public static final String COMPONENTS = "components";
+  public static final String COMPONENT_MASK = "componentMask";
+  public static final String BUFFERS = "buffers";
+  public static final String DECOMPOSE = "decompose";
+  public static final String PERSIST = "persist";
+  public static final String SCHEMA_TYPES = "schemaTypes";
+  /** end-of-component bytes of a composite slice bound */
+  public static final int EOC_BEFORE = -1;
+  public static final int EOC_EXACT = 0;
+  public static final int EOC_AFTER = 1;
+  public static final String MARKEDDELETE = "markeddelete";
   public static final String E = "e";
   public static final String TTL = "ttl";
   public static final String TIMESTAMP = "timestamp";
@@ -125,12 +147,96 @@ public class Operations {
             .set(SIZE, size);
   }
 
+  /**
+   * A reversed slice reads from start down to end, so start is the greater
+   * column name, and returns the columns in that order. With a size of N it
+   * reads the last N columns of a row without touching the rest.
+   */
+  public static IntraOp sliceOp( Object rowkey , Object start, Object end, int size, boolean reversed){
+    return sliceOp(rowkey, start, end, size).set(REVERSED, reversed);
+  }
+
+  /**
+   * Like sliceOp, but the result is an object holding the columns and a
+   * cursor to pass to nextSliceOp for the following page, null once the
+   * slice is exhausted.
+   */
+  public static IntraOp pagedSliceOp( Object rowkey , Object start, Object end, int size){
+    return sliceOp(rowkey, start, end, size).set(PAGED, true);
+  }
+
+  /**
+   * Continues a paged slice right after the last column of the page the
+   * cursor was returned with.
+   */
+  public static IntraOp nextSliceOp( Object rowkey , String cursor, Object end, int size){
+    Preconditions.checkArgument(cursor != null, "A cursor is required to continue a {}", IntraOp.Type.SLICE);
+    return sliceOp(rowkey, null, end, size).set(CURSOR, cursor);
+  }
+
+  /**
+   * Reads one column from each of the row keys with a single StorageProxy.read.
+   * The result is an object keyed by row key.
+   */
+  public static IntraOp multiGetOp(List rowkeys, Object columnName){
+    Preconditions.checkArgument(rowkeys != null && !rowkeys.isEmpty(), "Row keys are required for {}", IntraOp.Type.MULTIGET);
+    Preconditions.checkArgument(columnName != null, "The columnName cannot be null for {}", IntraOp.Type.MULTIGET);
+    return new IntraOp(IntraOp.Type.MULTIGET)
+            .set(ROWKEYS, rowkeys)
+            .set(NAME, columnName);
+  }
+
+  /**
+   * Slices each of the row keys with a single StorageProxy.read. The result
+   * is an object keyed by row key.
+   */
+  public static IntraOp multiSliceOp(List rowkeys, Object start, Object end, int size){
+    Preconditions.checkArgument(rowkeys != null && !rowkeys.isEmpty(), "Row keys are required for {}", IntraOp.Type.MULTISLICE);
+    Preconditions.checkArgument(size > 0, "A slice size must be positive integer for {}", IntraOp.Type.MULTISLICE);
+    return new IntraOp(IntraOp.Type.MULTISLICE)
+            .set(ROWKEYS, rowkeys)
+            .set(START, start)
+            .set(END, end)
+            .set(SIZE, size);
+  }
+
+  /**
+   * Slices every row whose token is in (startToken, endToken], null meaning
+   * the minimum token so two nulls cover the whole ring. The rows are read
+   * in token order, a page at a time, until limit rows with live columns are
+   * found. The result is an array of objects holding the row key and its
+   * columns. Set REVERSED for reversed column slices.
+   */
+  public static IntraOp rangeSliceOp(String startToken, String endToken, Object start, Object end, int size, int limit){
+    Preconditions.checkArgument(size > 0, "A slice size must be positive integer for {}", IntraOp.Type.RANGESLICE);
+    Preconditions.checkArgument(limit > 0, "A row limit must be positive integer for {}", IntraOp.Type.RANGESLICE);
+    return new IntraOp(IntraOp.Type.RANGESLICE)
+            .set(START_TOKEN, startToken)
+            .set(END_TOKEN, endToken)
+            .set(START, start)
+            .set(END, end)
+            .set(SIZE, size)
+            .set(LIMIT, limit);
+  }
+
   public static IntraOp sliceByNames( Object rowkey, List columnList){
     Preconditions.checkArgument(columnList != null, "You much provide a columnList array");
  		return new IntraOp(IntraOp.Type.SLICEBYNAMES)
              .set(WANTEDCOLS, columnList).set("rowkey",rowkey);
  	}
 
+  /**
+   * Reads the named columns from each of the row keys with a single
+   * StorageProxy.read. The result is an object keyed by row key.
+   */
+  public static IntraOp multiSliceByNames(List rowkeys, List columnList){
+    Preconditions.checkArgument(rowkeys != null && !rowkeys.isEmpty(), "Row keys are required for {}", IntraOp.Type.SLICEBYNAMES);
+    Preconditions.checkArgument(columnList != null, "You much provide a columnList array");
+    return new IntraOp(IntraOp.Type.SLICEBYNAMES)
+            .set(WANTEDCOLS, columnList)
+            .set(ROWKEYS, rowkeys);
+  }
+
   public static IntraOp counter( Object rowkey, Object columnName, Long value) {
     Preconditions.checkArgument(rowkey != null,"A row key is required for {}", IntraOp.Type.COUNTER);
     Preconditions.checkArgument(columnName != null,"A column name is required for {}", IntraOp.Type.COUNTER);
@@ -186,6 +292,57 @@ public class Operations {
             .set(CLAZZ, clazz );
   }
 
+  /**
+   * Assumes a CompositeType or DynamicCompositeType. With decompose the
+   * composite is returned as an array of its components, each one typed by
+   * its own comparator, rather than as the raw bytes.
+   */
+  public static IntraOp assumeOp(String keyspace,String columnfamily,String type, String clazz, boolean decompose){
+    return assumeOp(keyspace, columnfamily, type, clazz).set(DECOMPOSE, decompose);
+  }
+
+  /**
+   * Keeps the types of an ASSUME on the server for every request that
+   * follows, until the schema of the column family changes. ASSUMEs that are
+   * not persisted only last for their request and override persisted ones.
+   */
+  public static IntraOp persist(IntraOp assume){
+    Preconditions.checkArgument(assume.getType() == IntraOp.Type.ASSUME, "Only an %s can be persisted", IntraOp.Type.ASSUME);
+    return assume.set(PERSIST, true);
+  }
+
+  /**
+   * A slice start over the columns of a CompositeType that begin with the
+   * given components. Inclusive starts at the first of them, otherwise the
+   * slice starts right after the last of them.
+   */
+  public static Object[] compositeStart(boolean inclusive, Object... components){
+    return composite(inclusive ? EOC_BEFORE : EOC_AFTER, components);
+  }
+
+  /**
+   * A slice end over the columns of a CompositeType that begin with the given
+   * components. Inclusive ends after the last of them, otherwise the slice
+   * ends right before the first of them.
+   */
+  public static Object[] compositeEnd(boolean inclusive, Object... components){
+    return composite(inclusive ? EOC_AFTER : EOC_BEFORE, components);
+  }
+
+  /**
+   * @return the components paired with their end-of-component bytes, the
+   *         form composite names and bounds take in a request
+   */
+  public static Object[] composite(int lastEoc, Object... components){
+    Preconditions.checkArgument(components.length > 0, "A composite needs at least one component");
+    Object[] composite = new Object[components.length * 2];
+    for (int i = 0; i < components.length; i++) {
+      composite[i * 2] = components[i];
+      composite[i * 2 + 1] = i == components.length - 1 ? lastEoc : EOC_EXACT;
+    }
+    return composite;
+  }
+
   
   
   public static IntraOp assumeColumnOp(String keyspace , String columnfamily, Object column, String clazz){
@@ -21,9 +21,33 @@ import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.SyntaxException;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+
 import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class TypeHelper {
+
+  /*
+   * Parsed types by class string. TypeParser keeps a cache of its own, but in
+   * a plain HashMap that is not safe to share between the operation threads.
+   */
+  private static final ConcurrentMap<String, AbstractType<?>> types = new ConcurrentHashMap<String, AbstractType<?>>();
+  private static final Counter typeCacheHits = Metrics.newCounter(TypeHelper.class, "TypeCacheHits");
+  private static final Counter typeCacheMisses = Metrics.newCounter(TypeHelper.class, "TypeCacheMisses");
+
+  static {
+    Metrics.newGauge(TypeHelper.class, "TypeCacheSize", new Gauge<Integer>() {
+      @Override
+      public Integer value() {
+        return types.size();
+      }
+    });
+  }
+
   /*
   public static Object getTypedIfPossible(IntraState state, String type, ByteBuffer bb, IntraOp op) {
 
@@ -47,9 +71,31 @@ public class TypeHelper {
   }
 
   private static Object compose(ByteBuffer bb, String s) {
+    return getType(s).compose(bb);
+  }
+
+  /**
+   * @return the type named by a class string such as UTF8Type or
+   *         CompositeType(UTF8Type,Int32Type), parsed once and cached
+   */
+  public static AbstractType<?> getType(String s) {
+    if (s == null) {
+      return parse(s);
+    }
+    AbstractType<?> type = types.get(s);
+    if (type != null) {
+      typeCacheHits.inc();
+      return type;
+    }
+    typeCacheMisses.inc();
+    type = parse(s);
+    AbstractType<?> previous = types.putIfAbsent(s, type);
+    return previous == null ? type : previous;
+  }
+
+  private static AbstractType<?> parse(String s) {
     try {
-      AbstractType<?> abstractType = TypeParser.parse(s);
-      return abstractType.compose(bb);
+      return TypeParser.parse(s);
     } catch (SyntaxException | ConfigurationException e) {
       throw new RuntimeException("Failed to parse type [" + s + "]", e);
     }
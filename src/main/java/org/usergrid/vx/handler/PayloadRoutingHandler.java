@@ -2,16 +2,16 @@ package org.usergrid.vx.handler;
 
 import org.usergrid.vx.experimental.Operations;
 import org.usergrid.vx.handler.http.OperationsRequestHandler;
-import org.usergrid.vx.handler.http.TimeoutHandler;
-import org.usergrid.vx.server.operations.HandlerUtils;
+import org.usergrid.vx.handler.http.PreparedRequests;
+import org.usergrid.vx.server.LocalDispatcher;
+import org.usergrid.vx.server.operations.ColumnDecoder;
+import org.usergrid.vx.server.operations.TypeRegistry;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
  * @author zznate
  */
@@ -19,28 +19,111 @@ public class PayloadRoutingHandler implements Handler<Message<JsonObject>> {
 
   public static final String IHJSON_HANDLER_TOPIC = "request.json";
   public static final String REQUEST_HANDLER_HEADER = "operations.";
+  /** Optional field of a request naming the local address its results are streamed to. */
+  public static final String STREAM_ADDRESS = "stream";
+  /**
+   * Optional field of a request whose transport can write ByteBuffer results,
+   * reads then skip copying names and values into byte arrays.
+   */
+  public static final String BUFFERS = "buffers";
+  /**
+   * Optional field of a request turning schema typed reads on or off for it,
+   * the server default is set with the <code>schemaTypes</code> system property.
+   */
+  public static final String SCHEMA_TYPES = "schemaTypes";
+  /**
+   * Optional field of a request with the milliseconds it may take, the server
+   * default is set with the <code>requestTimeout</code> system property. In
+   * both 0 means no deadline.
+   */
+  public static final String TIMEOUT = "timeout";
+  /** Optional field of a request naming the local address that cancels it. */
+  public static final String CANCEL_ADDRESS = "cancel";
+
+  private static final long DEFAULT_TIMEOUT = Long.getLong("requestTimeout", 0);
   
   private final Vertx vertx;
+  private final LocalDispatcher dispatcher;
+  private final PreparedRequests prepared = new PreparedRequests();
 
-  public PayloadRoutingHandler(Vertx vertx) {
+  public PayloadRoutingHandler(Vertx vertx, LocalDispatcher dispatcher) {
     this.vertx = vertx;
+    this.dispatcher = dispatcher;
   }
 
   @Override
   public void handle(Message<JsonObject> event) {
-    AtomicInteger idGenerator = new AtomicInteger(0);
     JsonArray operations = event.body().getArray(Operations.E);
-    JsonObject operation = (JsonObject) operations.get(idGenerator.get());
-    operation.putNumber(Operations.ID, idGenerator.get());
-    operation.putObject(Operations.STATE, new JsonObject().putArray(Operations.COMPONENTS,
-            new JsonArray().add(Operations.NAME).add(Operations.VALUE)));
-    idGenerator.incrementAndGet();
-    OperationsRequestHandler operationsRequestHandler = new OperationsRequestHandler(idGenerator,
-        operations, event, vertx);
-    TimeoutHandler timeoutHandler = new TimeoutHandler(operationsRequestHandler);
-    long timerId = vertx.setTimer(HandlerUtils.instance.getOperationTimeout(operation), timeoutHandler);
-    operationsRequestHandler.setTimerId(timerId);
-    vertx.eventBus().send(new StringBuilder(REQUEST_HANDLER_HEADER).append( operation.getString(Operations.TYPE).toLowerCase()).toString(), operation,
-        operationsRequestHandler);
+    String streamAddress = event.body().getString(STREAM_ADDRESS);
+    try {
+      if (PreparedRequests.isPrepare(operations)) {
+        reply(event, streamAddress, prepared.prepare(operations), null);
+        return;
+      }
+      if (PreparedRequests.isExecute(operations)) {
+        operations = prepared.bind(operations);
+      }
+    } catch (IllegalArgumentException e) {
+      reply(event, streamAddress, null, e.getMessage());
+      return;
+    }
+    JsonObject state = new JsonObject().putArray(Operations.COMPONENTS,
+            new JsonArray().add(Operations.NAME).add(Operations.VALUE))
+            .putNumber(Operations.COMPONENT_MASK, ColumnDecoder.NAME | ColumnDecoder.VALUE);
+    if (event.body().getBoolean(BUFFERS, false) && !hasProcessor(operations)) {
+      state.putBoolean(Operations.BUFFERS, true);
+    }
+    if (event.body().getBoolean(SCHEMA_TYPES, TypeRegistry.instance.isSchemaTyped())) {
+      state.putBoolean(Operations.SCHEMA_TYPES, true);
+    }
+    Number timeout = event.body().getNumber(TIMEOUT);
+    long budget = timeout == null ? DEFAULT_TIMEOUT : timeout.longValue();
+    if (budget < 0) {
+      reply(event, streamAddress, null, "Invalid timeout " + budget);
+      return;
+    }
+    long deadline = budget == 0 ? 0 : System.currentTimeMillis() + budget;
+    OperationsRequestHandler operationsRequestHandler;
+    try {
+      operationsRequestHandler = new OperationsRequestHandler(operations,
+          event, vertx, dispatcher, state, streamAddress, deadline, event.body().getString(CANCEL_ADDRESS));
+    } catch (RuntimeException e) {
+      // malformed operations, the request still has to be answered
+      reply(event, streamAddress, null, e.getMessage() == null ? e.toString() : e.getMessage());
+      return;
+    }
+    operationsRequestHandler.start();
+  }
+
+  /* processors are handed results as plain maps and expect byte arrays in them */
+  private static boolean hasProcessor(JsonArray operations) {
+    for (Object operation : operations) {
+      String type = ((JsonObject) operation).getString(Operations.TYPE);
+      if ("process".equalsIgnoreCase(type) || "multiprocess".equalsIgnoreCase(type)
+              || "serviceprocess".equalsIgnoreCase(type)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Answers a PREPARE with its id as the result of operation 0, or fails the
+   * request at operation 0.
+   */
+  private void reply(Message<JsonObject> event, String streamAddress, Integer preparedId, String exception) {
+    JsonObject opsRes = new JsonObject();
+    if (preparedId != null) {
+      if (streamAddress == null) {
+        opsRes.putNumber("0", preparedId);
+      } else {
+        dispatcher.send(streamAddress, new JsonObject().putString(Operations.ID, "0")
+                .putNumber(OperationsRequestHandler.RESULT, preparedId), null);
+      }
+    }
+    event.reply(new JsonObject()
+            .putObject(Operations.OPS_RES, opsRes)
+            .putString(Operations.EXCEPTION, exception)
+            .putString(Operations.EXCEPTION_ID, exception == null ? null : "0"));
   }
 }
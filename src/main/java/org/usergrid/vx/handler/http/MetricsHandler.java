@@ -0,0 +1,33 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http;
+
+import org.usergrid.vx.server.IntravertMetrics;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpServerRequest;
+
+/**
+ * Answers with the metrics of the server as a JSON object, see
+ * {@link IntravertMetrics}.
+ */
+public class MetricsHandler implements Handler<HttpServerRequest> {
+
+  @Override
+  public void handle(HttpServerRequest request) {
+    request.response().putHeader("Content-Type", "application/json");
+    request.response().end(IntravertMetrics.toJson().encode());
+  }
+}
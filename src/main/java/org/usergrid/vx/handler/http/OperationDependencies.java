@@ -0,0 +1,168 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.operations.HandlerUtils;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Works out which operations of a request have to wait for which others.
+ *
+ * Only plain reads and writes of rows may run side by side. Every
+ * other operation type changes the request state (keyspace, column family,
+ * consistency, filters, assumptions...), touches the schema or runs user code
+ * over earlier results, so it acts as a barrier: it waits for everything
+ * before it and everything after it waits for it. Between two barriers a read
+ * or write waits for the operations it references through GETREF and for
+ * earlier operations on the same row key when at least one of the two writes.
+ * Row keys are compared without their keyspace and column family, which may
+ * come from the state, so two operations on equal keys in different column
+ * families are kept in order as well.
+ */
+public class OperationDependencies {
+
+  private static final Set<String> READS = new HashSet<String>(Arrays.asList("get", "slice", "slicebynames", "multiget", "multislice"));
+  private static final Set<String> WRITES = new HashSet<String>(Arrays.asList("set", "counter"));
+
+  private OperationDependencies() {}
+
+  /**
+   * @return for each operation, the ids of the operations it depends on
+   */
+  public static List<Set<Integer>> analyze(JsonArray operations) {
+    List<Set<Integer>> dependencies = new ArrayList<Set<Integer>>(operations.size());
+    int barrier = -1;
+    for (int i = 0; i < operations.size(); i++) {
+      JsonObject operation = (JsonObject) operations.get(i);
+      Set<Integer> depends = new TreeSet<Integer>();
+      if (!isConcurrent(operation)) {
+        for (int j = barrier + 1; j < i; j++) {
+          depends.add(j);
+        }
+        if (barrier >= 0) {
+          depends.add(barrier);
+        }
+        barrier = i;
+      } else {
+        if (barrier >= 0) {
+          depends.add(barrier);
+        }
+        for (Integer ref : references(operation)) {
+          if (ref < i) {
+            depends.add(ref);
+          }
+        }
+        for (int j = barrier + 1; j < i; j++) {
+          if (conflicts((JsonObject) operations.get(j), operation)) {
+            depends.add(j);
+          }
+        }
+      }
+      dependencies.add(depends);
+    }
+    return dependencies;
+  }
+
+  /**
+   * Reads and writes of a single row that do not depend on a changing state.
+   */
+  static boolean isConcurrent(JsonObject operation) {
+    String type = type(operation);
+    return (READS.contains(type) || WRITES.contains(type)) && operation.getObject(Operations.OP) != null;
+  }
+
+  static Set<Integer> references(JsonObject operation) {
+    Set<Integer> refs = new TreeSet<Integer>();
+    JsonObject params = operation.getObject(Operations.OP);
+    for (String name : params.getFieldNames()) {
+      Object o = params.getField(name);
+      if (o instanceof JsonObject) {
+        JsonObject j = (JsonObject) o;
+        if ("GETREF".equals(j.getString(Operations.TYPE)) && j.getObject(Operations.OP) != null) {
+          Integer ref = j.getObject(Operations.OP).getInteger("resultref");
+          if (ref != null) {
+            refs.add(ref);
+          }
+        }
+      }
+    }
+    return refs;
+  }
+
+  static boolean conflicts(JsonObject earlier, JsonObject later) {
+    if (!WRITES.contains(type(earlier)) && !WRITES.contains(type(later))) {
+      return false;
+    }
+    Set<ByteBuffer> earlierKeys = rowKeys(earlier);
+    Set<ByteBuffer> laterKeys = rowKeys(later);
+    // a key that is still a GETREF can resolve to any row
+    if (earlierKeys == null || laterKeys == null) {
+      return true;
+    }
+    for (ByteBuffer key : laterKeys) {
+      if (earlierKeys.contains(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the row keys an operation touches, encoded the way the handlers
+   *         write them, or null when one of them is a reference that is not
+   *         resolved yet or cannot be encoded
+   */
+  private static Set<ByteBuffer> rowKeys(JsonObject operation) {
+    JsonObject params = operation.getObject(Operations.OP);
+    List<Object> keys = new ArrayList<Object>();
+    keys.add(params.getField(Operations.ROWKEY));
+    if (params.getField(Operations.ROWKEYS) instanceof JsonArray) {
+      for (Object key : params.getArray(Operations.ROWKEYS)) {
+        keys.add(key);
+      }
+    }
+    Set<ByteBuffer> rowKeys = new HashSet<ByteBuffer>();
+    for (Object key : keys) {
+      if (key instanceof JsonObject) {
+        return null;
+      }
+      if (key != null) {
+        // binary keys from Smile are byte arrays, which only compare by identity
+        try {
+          rowKeys.add(HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(key)));
+        } catch (RuntimeException e) {
+          return null;
+        }
+      }
+    }
+    return rowKeys;
+  }
+
+  private static String type(JsonObject operation) {
+    String type = operation.getString(Operations.TYPE);
+    return type == null ? "" : type.toLowerCase();
+  }
+}
@@ -1,6 +1,9 @@
 package org.usergrid.vx.handler.http;
 
 import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.handler.PayloadRoutingHandler;
+import org.usergrid.vx.server.DiagnosticLog;
+import org.usergrid.vx.server.LocalDispatcher;
 import org.usergrid.vx.server.operations.HandlerUtils;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
@@ -8,66 +11,257 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class OperationsRequestHandler implements Handler<Message<JsonObject>> {
+/**
+ * Runs the operations of one request and collects their results.
+ *
+ * The dependencies between the operations are worked out up front by
+ * {@link OperationDependencies}. An operation is dispatched as soon as the
+ * operations it depends on have answered, so independent reads and writes are
+ * in flight at the same time. Runs of adjacent writes found by
+ * {@link WriteCoalescer} are dispatched together as a single batch. Results
+ * are reported in operation order, and the first failure or timeout ends the
+ * request with the results of the operations before it.
+ *
+ * When the request names a stream address, each result is sent there as soon
+ * as it and the results before it are known, and the final reply only
+ * carries the exception fields. Results that no later operation reads
+ * (through GETREF or as processor input) are dropped once they are streamed.
+ * The stream can pause the request through its flow address, no operation
+ * is dispatched then until it is resumed.
+ *
+ * Operations are handed the state of the request by reference, see
+ * {@link RequestState}; the state they reply with is a delta applied to it.
+ *
+ * A request may carry a deadline. Every operation is then given what is left
+ * of it as its timeout (or its own timeout when that is shorter) and the
+ * deadline in its envelope, and no operation is dispatched once it has
+ * passed. When the client goes away, a message to the cancel address of the
+ * request ends it the same way.
+ *
+ * The request is always answered: an operation that can not be dispatched,
+ * or whose result can not be collected, fails the request like an operation
+ * that replied with an exception.
+ */
+public class OperationsRequestHandler {
+
+  public static final String RESULT = "result";
+  public static final String DEADLINE_EXCEEDED = "Request deadline exceeded.";
+  public static final String CANCELLED = "Request cancelled.";
+  /** Suffix of the address a result stream pauses and resumes its request at. */
+  public static final String FLOW_SUFFIX = ".flow";
+  /** Field of a flow message, true to pause and false to resume. */
+  public static final String PAUSE = "pause";
 
-  private AtomicInteger idGenerator;
   private JsonArray operations;
   private Message<JsonObject> originalMessage;
   private JsonObject results;
-  private JsonObject state;
-  private boolean timedOut = false;
+  private final RequestState state;
+  private boolean finished = false;
   private ReentrantLock timeoutLock = new ReentrantLock();
-  private long timerId;
 
-  //TODO static ?
-  private Vertx vertx;
+  // the units that are dispatched, one or more operation ids each
+  private final List<List<Integer>> nodes;
+  private final int[] waitingOn;
+  private final List<List<Integer>> dependents;
+  private final long[] timerIds;
+  private final long[] expiresAt;
+  private int completed = 0;
+
+  private final String streamAddress;
+  private final long deadline;
+  private final String cancelAddress;
+  private final String trace = DiagnosticLog.newTrace();
+  private final boolean[] done;
+  private final boolean[] retained;
+  private int streamed = 0;
+  private boolean paused = false;
+  private final List<Integer> deferred = new ArrayList<Integer>();
 
-  public OperationsRequestHandler(AtomicInteger idGenerator, JsonArray operations,
-                                  Message<JsonObject> originalMessage, Vertx vertx) {
-    this.idGenerator = idGenerator;
+  private final Vertx vertx;
+  private final LocalDispatcher dispatcher;
+
+  public OperationsRequestHandler(JsonArray operations, Message<JsonObject> originalMessage,
+                                  Vertx vertx, LocalDispatcher dispatcher, JsonObject state,
+                                  String streamAddress, long deadline, String cancelAddress) {
     this.operations = operations;
     this.originalMessage = originalMessage;
     this.vertx = vertx;
+    this.dispatcher = dispatcher;
     results = new JsonObject();
     results.putObject("opsRes", new JsonObject());
     results.putString("exception", null);
     results.putString("exceptionId", null);
-    state = new JsonObject();
-  }
+    this.state = new RequestState(state);
+    this.streamAddress = streamAddress;
+    this.deadline = deadline;
+    this.cancelAddress = cancelAddress;
+    done = new boolean[operations.size()];
+    retained = streamAddress == null ? null : retainedResults(operations);
 
-  public void setTimerId(long timerId) {
-    this.timerId = timerId;
+    List<Set<Integer>> dependencies = OperationDependencies.analyze(operations);
+    nodes = WriteCoalescer.group(operations);
+    int[] nodeOf = new int[operations.size()];
+    for (int n = 0; n < nodes.size(); n++) {
+      for (Integer id : nodes.get(n)) {
+        nodeOf[id] = n;
+      }
+    }
+    waitingOn = new int[nodes.size()];
+    timerIds = new long[nodes.size()];
+    expiresAt = new long[nodes.size()];
+    dependents = new ArrayList<List<Integer>>(nodes.size());
+    for (int n = 0; n < nodes.size(); n++) {
+      dependents.add(new ArrayList<Integer>());
+    }
+    for (int n = 0; n < nodes.size(); n++) {
+      Set<Integer> nodeDependencies = new TreeSet<Integer>();
+      for (Integer id : nodes.get(n)) {
+        for (Integer dependency : dependencies.get(id)) {
+          if (nodeOf[dependency] != n) {
+            nodeDependencies.add(nodeOf[dependency]);
+          }
+        }
+      }
+      waitingOn[n] = nodeDependencies.size();
+      for (Integer dependency : nodeDependencies) {
+        dependents.get(dependency).add(n);
+      }
+    }
   }
 
-  
-  @SuppressWarnings("unchecked")
-  @Override
-  public void handle(Message<JsonObject> event) {
-    vertx.cancelTimer(timerId);
+  /**
+   * @return for each operation whether a later one reads its result
+   */
+  private static boolean[] retainedResults(JsonArray operations) {
+    boolean[] retained = new boolean[operations.size()];
+    for (int j = 0; j < operations.size(); j++) {
+      JsonObject operation = (JsonObject) operations.get(j);
+      JsonObject params = operation.getObject(Operations.OP);
+      if (params == null) {
+        continue;
+      }
+      String type = operation.getString(Operations.TYPE);
+      if ("multiprocess".equalsIgnoreCase(type) || "serviceprocess".equalsIgnoreCase(type)) {
+        for (int i = 0; i < j; i++) {
+          retained[i] = true;
+        }
+      } else if ("process".equalsIgnoreCase(type) && params.getInteger("input") != null) {
+        int input = params.getInteger("input");
+        if (input >= 0 && input < j) {
+          retained[input] = true;
+        }
+      }
+      for (Integer ref : OperationDependencies.references(operation)) {
+        if (ref >= 0 && ref < j) {
+          retained[ref] = true;
+        }
+      }
+    }
+    return retained;
+  }
 
-    Integer currentId = idGenerator.get();
-    Integer opId = currentId - 1;
-    String exceptionId = event.body().getString(Operations.EXCEPTION_ID);
-    String exception = event.body().getString(Operations.EXCEPTION);
-    
-    if (exception != null || exceptionId != null) {      
-      results.putString(Operations.EXCEPTION, exception);
-      results.putString(Operations.EXCEPTION_ID, exceptionId);
-      sendResults();
-      return;
+  /**
+   * Dispatches every operation that does not wait on another one.
+   */
+  public void start() {
+    try {
+      timeoutLock.lock();
+      if (operations.size() == 0) {
+        sendResults(0);
+        return;
+      }
+      if (cancelAddress != null) {
+        dispatcher.registerLocalHandler(cancelAddress, new Handler<Message<JsonObject>>() {
+          @Override
+          public void handle(Message<JsonObject> event) {
+            cancel();
+          }
+        });
+      }
+      if (streamAddress != null) {
+        dispatcher.registerLocalHandler(streamAddress + FLOW_SUFFIX, new Handler<Message<JsonObject>>() {
+          @Override
+          public void handle(Message<JsonObject> event) {
+            flow(event.body().getBoolean(PAUSE));
+          }
+        });
+      }
+      for (int n = 0; n < nodes.size(); n++) {
+        if (waitingOn[n] == 0) {
+          dispatch(n);
+        }
+      }
+    } finally {
+      timeoutLock.unlock();
     }
+  }
 
-    Map<String, Object> map = event.body().toMap();
-    Object opResult = map.get(String.valueOf(opId));
-    String userId = ((JsonObject) operations.get(opId)).getObject(Operations.OP).getString(Operations.USER_OP_ID)  ;
-    if (userId == null){
-      userId = String.valueOf(opId);
+  private void complete(int node, Message<JsonObject> event) {
+    try {
+      timeoutLock.lock();
+      vertx.cancelTimer(timerIds[node]);
+      if (finished) {
+        return;
+      }
+      if (System.currentTimeMillis() >= expiresAt[node]) {
+        // a late reply times out even when the timer could not fire, e.g. while the
+        // event loop was held by a filter
+        timedOut(node);
+        return;
+      }
+
+      String exceptionId = event.body().getString(Operations.EXCEPTION_ID);
+      String exception = event.body().getString(Operations.EXCEPTION);
+
+      if (exception != null || exceptionId != null) {
+        results.putString(Operations.EXCEPTION, exception);
+        results.putString(Operations.EXCEPTION_ID, exceptionId);
+        sendResults(nodes.get(node).get(0));
+        return;
+      }
+
+      try {
+        for (Integer opId : nodes.get(node)) {
+          putResult(opId, event.body().getField(String.valueOf(opId)));
+          done[opId] = true;
+        }
+
+        if (event.body().getObject(Operations.STATE) != null) {
+          state.apply(event.body().getObject(Operations.STATE));
+        }
+      } catch (RuntimeException e) {
+        fail(node, message(e));
+        return;
+      }
+      completed += nodes.get(node).size();
+      if (streamAddress != null) {
+        while (streamed < operations.size() && done[streamed]) {
+          stream(streamed++);
+        }
+      }
+      if (completed == operations.size()) {
+        sendResults(operations.size());
+        return;
+      }
+      for (Integer dependent : dependents.get(node)) {
+        waitingOn[dependent]--;
+        if (waitingOn[dependent] == 0) {
+          dispatch(dependent);
+        }
+      }
+    } finally {
+      timeoutLock.unlock();
     }
+  }
+
+  private void putResult(int opId, Object opResult) {
+    String userId = userId(opId);
     // Doing the instanceof check here sucks but there are two reasons why it is
     // here at least for now. First, with this refactoring I do not want to change
     // behavior. To the greatest extent possible, I want integration tests to pass
@@ -84,8 +278,8 @@ public class OperationsRequestHandler implements Handler<Message<JsonObject>> {
       results.getObject(Operations.OPS_RES).putNumber(userId, (Number) opResult);
     } else if (opResult instanceof JsonObject) {
       results.getObject(Operations.OPS_RES).putObject(userId, (JsonObject) opResult);
-    } else if (opResult instanceof List) {
-      results.getObject(Operations.OPS_RES).putArray(userId, new JsonArray((List<Object>) opResult));
+    } else if (opResult instanceof JsonArray) {
+      results.getObject(Operations.OPS_RES).putArray(userId, (JsonArray) opResult);
     } else {
       if (opResult != null){
         throw new IllegalArgumentException(opResult.getClass() + " is not a supported result type");
@@ -93,65 +287,251 @@ public class OperationsRequestHandler implements Handler<Message<JsonObject>> {
         throw new IllegalArgumentException("No result for operation.");
       }
     }
+  }
 
-    if (idGenerator.get() < operations.size()) {
-      JsonObject operation = (JsonObject) operations.get(idGenerator.get());
-      operation.putNumber(Operations.ID, idGenerator.get());
-      if (event.body().getObject(Operations.STATE) != null) {
-        state.mergeIn(event.body().getObject(Operations.STATE));
-      }
-      operation.putObject(Operations.STATE, state.copy()); 
-      idGenerator.incrementAndGet();
-      TimeoutHandler timeoutHandler = new TimeoutHandler(this);
-      timerId = vertx.setTimer(HandlerUtils.instance.getOperationTimeout(operation), timeoutHandler);
-      
-      HandlerUtils.instance.resolveRefs( operation, results.getObject(Operations.OPS_RES) );
-      
-      if (operation.getString(Operations.TYPE).equalsIgnoreCase("serviceprocess")) {
-        JsonObject params = operation.getObject("op");
-        JsonObject theParams = params.getObject("params");
-        operation.putObject("mpparams", theParams);
-        operation.putObject("mpres", results.getObject("opsRes"));
-        vertx.eventBus().send("sps." + params.getString("name").toLowerCase(), operation, this);
-      } else if (operation.getString(Operations.TYPE).equalsIgnoreCase("multiprocess")){
-        JsonObject params = operation.getObject("op");
-        JsonObject theParams = params.getObject("params");
-        operation.putObject("mpparams", theParams);
-        operation.putObject("mpres", results.getObject("opsRes"));        
-        vertx.eventBus().send("multiprocessors." + params.getString("name"), operation, this);
-      } else if (operation.getString(Operations.TYPE).equalsIgnoreCase("process")){
-        JsonObject params = operation.getObject("op");
-        Integer input = params.getInteger("input");
-        operation.putArray("input", this.results.getObject("opsRes").getArray(input+"") );
-        vertx.eventBus().send("processors." + params.getString("processorname"), operation, this);
-      } else {
-        vertx.eventBus().send("operations." + operation.getString("type").toLowerCase(), operation, this);
+  private void dispatch(int node) {
+    if (finished) {
+      return;
+    }
+    if (paused) {
+      deferred.add(node);
+      return;
+    }
+    if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+      fail(node, DEADLINE_EXCEEDED);
+      return;
+    }
+    try {
+      send(node);
+    } catch (RuntimeException e) {
+      vertx.cancelTimer(timerIds[node]);
+      fail(node, message(e));
+    }
+  }
+
+  /**
+   * Each dispatch gets its own envelope that points at the parsed operation
+   * parameters, so the request itself is never mutated or re-encoded.
+   */
+  private void send(final int node) {
+    Handler<Message<JsonObject>> reply = new Handler<Message<JsonObject>>() {
+      @Override
+      public void handle(Message<JsonObject> event) {
+        complete(node, event);
       }
+    };
+    if (nodes.get(node).size() > 1) {
+      dispatchCoalesced(node, reply);
+      return;
+    }
+    int id = nodes.get(node).get(0);
+    JsonObject operation = envelope(id);
+    operation.putObject(Operations.STATE, state.snapshot());
+    TimeoutHandler timeoutHandler = new TimeoutHandler(this, node);
+    timerIds[node] = vertx.setTimer(expiry(node, HandlerUtils.instance.getOperationTimeout(operation)), timeoutHandler);
+
+    HandlerUtils.instance.resolveRefs( operation, results.getObject(Operations.OPS_RES) );
+
+    if (operation.getString(Operations.TYPE).equalsIgnoreCase("serviceprocess")) {
+      JsonObject params = operation.getObject("op");
+      JsonObject theParams = params.getObject("params");
+      operation.putObject("mpparams", theParams);
+      operation.putObject("mpres", results.getObject("opsRes"));
+      dispatcher.send("sps." + params.getString("name").toLowerCase(), operation, reply);
+    } else if (operation.getString(Operations.TYPE).equalsIgnoreCase("multiprocess")){
+      JsonObject params = operation.getObject("op");
+      JsonObject theParams = params.getObject("params");
+      operation.putObject("mpparams", theParams);
+      operation.putObject("mpres", results.getObject("opsRes"));
+      dispatcher.send("multiprocessors." + params.getString("name"), operation, reply);
+    } else if (operation.getString(Operations.TYPE).equalsIgnoreCase("process")){
+      JsonObject params = operation.getObject("op");
+      Integer input = params.getInteger("input");
+      operation.putArray("input", this.results.getObject("opsRes").getArray(input+"") );
+      dispatcher.send("processors." + params.getString("processorname"), operation, reply);
     } else {
-      sendResults();
+      dispatcher.send(PayloadRoutingHandler.REQUEST_HANDLER_HEADER + operation.getString(Operations.TYPE).toLowerCase(),
+          operation, reply);
+    }
+  }
+
+  /**
+   * Sends a run of adjacent writes as one operation. The batch carries the id
+   * of its first write, which is what a failure is reported against, and the
+   * longest timeout of its members.
+   */
+  private void dispatchCoalesced(int node, Handler<Message<JsonObject>> reply) {
+    JsonArray members = new JsonArray();
+    long timeout = 0;
+    for (Integer id : nodes.get(node)) {
+      JsonObject member = envelope(id);
+      timeout = Math.max(timeout, HandlerUtils.instance.getOperationTimeout(member));
+      members.addObject(member);
+    }
+    JsonObject operation = new JsonObject();
+    operation.putString(Operations.TYPE, WriteCoalescer.COALESCED_WRITE);
+    operation.putObject(Operations.OP, new JsonObject().putNumber(Operations.TIMEOUT, timeout));
+    operation.putNumber(Operations.ID, nodes.get(node).get(0));
+    operation.putString(Operations.TRACE, trace);
+    operation.putArray(WriteCoalescer.OPS, members);
+    operation.putObject(Operations.STATE, state.snapshot());
+    if (deadline > 0) {
+      operation.putNumber(Operations.DEADLINE, deadline);
+    }
+    timerIds[node] = vertx.setTimer(expiry(node, timeout), new TimeoutHandler(this, node));
+    dispatcher.send(PayloadRoutingHandler.REQUEST_HANDLER_HEADER + WriteCoalescer.COALESCED_WRITE, operation, reply);
+  }
+
+  private JsonObject envelope(int id) {
+    JsonObject source = (JsonObject) operations.get(id);
+    JsonObject operation = new JsonObject();
+    operation.putString(Operations.TYPE, source.getString(Operations.TYPE));
+    if (source.getObject(Operations.OP) != null) {
+      operation.putObject(Operations.OP, source.getObject(Operations.OP));
+    }
+    operation.putNumber(Operations.ID, id);
+    operation.putString(Operations.TRACE, trace);
+    if (deadline > 0) {
+      operation.putNumber(Operations.DEADLINE, deadline);
     }
+    return operation;
+  }
+
+  /**
+   * @return the timeout of an operation, cut down to what is left of the
+   *         deadline of the request
+   */
+  private long budget(long timeout) {
+    if (deadline == 0) {
+      return timeout;
+    }
+    return Math.max(1, Math.min(timeout, deadline - System.currentTimeMillis()));
+  }
+
+  /**
+   * @return the milliseconds a node may take, noting when it expires
+   */
+  private long expiry(int node, long timeout) {
+    long budget = budget(timeout);
+    expiresAt[node] = System.currentTimeMillis() + budget;
+    return budget;
   }
 
-  private void sendResults() {
+  private String userId(int opId) {
+    JsonObject params = ((JsonObject) operations.get(opId)).getObject(Operations.OP);
+    String userId = params == null ? null : params.getString(Operations.USER_OP_ID);
+    return userId == null ? String.valueOf(opId) : userId;
+  }
+
+  /**
+   * Replies with the results of the operations before <code>end</code>, in
+   * operation order.
+   */
+  private void sendResults(int end) {
+    finished = true;
+    if (cancelAddress != null) {
+      dispatcher.unregisterLocalHandler(cancelAddress);
+    }
+    if (streamAddress != null) {
+      dispatcher.unregisterLocalHandler(streamAddress + FLOW_SUFFIX);
+      for (; streamed < end; streamed++) {
+        if (done[streamed]) {
+          stream(streamed);
+        }
+      }
+      results.putObject(Operations.OPS_RES, new JsonObject());
+      originalMessage.reply(results);
+      return;
+    }
+    JsonObject completedResults = results.getObject(Operations.OPS_RES);
+    JsonObject ordered = new JsonObject();
+    for (int i = 0; i < end; i++) {
+      String userId = userId(i);
+      if (completedResults.getField(userId) != null) {
+        ordered.putValue(userId, completedResults.getField(userId));
+      }
+    }
+    results.putObject(Operations.OPS_RES, ordered);
+    originalMessage.reply(results);
+  }
+
+  private void stream(int opId) {
+    String userId = userId(opId);
+    JsonObject opsRes = results.getObject(Operations.OPS_RES);
+    JsonObject chunk = new JsonObject()
+            .putString(Operations.ID, userId)
+            .putValue(RESULT, opsRes.getField(userId));
+    if (!retained[opId]) {
+      opsRes.removeField(userId);
+    }
+    dispatcher.send(streamAddress, chunk, null);
+  }
+
+  public void timeout(int node) {
     try {
       timeoutLock.lock();
-      if (!timedOut) {
-        originalMessage.reply(results);
+      if (finished) {
+        return;
       }
+      timedOut(node);
     } finally {
       timeoutLock.unlock();
     }
   }
 
-  public void timeout() {
+  private void timedOut(int node) {
+    boolean expired = deadline > 0 && System.currentTimeMillis() >= deadline;
+    fail(node, expired ? DEADLINE_EXCEEDED : "Operation timed out.");
+  }
+
+  /**
+   * Pauses dispatching while the stream can not keep up, and dispatches what
+   * was held back once it is resumed.
+   */
+  public void flow(boolean pause) {
     try {
       timeoutLock.lock();
-      timedOut = true;
-      results.putString("exception", "Operation timed out.");
-      results.putString("exceptionId", Integer.toString(idGenerator.get() - 1));
-      originalMessage.reply(results);
+      if (finished || paused == pause) {
+        return;
+      }
+      paused = pause;
+      if (!paused) {
+        List<Integer> resumed = new ArrayList<Integer>(deferred);
+        deferred.clear();
+        for (Integer node : resumed) {
+          dispatch(node);
+        }
+      }
     } finally {
       timeoutLock.unlock();
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Ends the request without answering the operations that are left, once
+   * nobody is waiting for them.
+   */
+  public void cancel() {
+    try {
+      timeoutLock.lock();
+      if (finished) {
+        return;
+      }
+      results.putString(Operations.EXCEPTION, CANCELLED);
+      sendResults(0);
+    } finally {
+      timeoutLock.unlock();
+    }
+  }
+
+  private static String message(Exception e) {
+    return e.getMessage() == null ? e.toString() : e.getMessage();
+  }
+
+  private void fail(int node, String exception) {
+    int opId = nodes.get(node).get(0);
+    results.putString(Operations.EXCEPTION, exception);
+    results.putString(Operations.EXCEPTION_ID, Integer.toString(opId));
+    sendResults(opId);
+  }
+}
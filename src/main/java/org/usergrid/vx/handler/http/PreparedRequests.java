@@ -0,0 +1,219 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.usergrid.vx.experimental.IntraOp;
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Server side cache of prepared requests.
+ *
+ * A request whose first operation is PREPARE is not run. The operations after
+ * it are validated once, the places that hold a BINDMARKER are recorded, and
+ * the result is stored under a new id. A request made of a single
+ * EXECUTEPREPARED then only has to copy the operations that hold markers and
+ * put the bound values in; every other operation is shared with the cached
+ * template. Results are keyed by the position of the operation in the
+ * template.
+ *
+ * Ids are local to the server that prepared them. The cache keeps the most
+ * recently used templates, its size is read from the
+ * <code>preparedRequests</code> system property. An execute of an evicted or
+ * unknown id fails and the client has to prepare again.
+ */
+public class PreparedRequests {
+
+  public static final String PID = "pid";
+  public static final String BIND = "bind";
+  private static final String MARK = "mark";
+  private static final String BINDMARKER = "BINDMARKER";
+  private static final int DEFAULT_SIZE = 1000;
+
+  private final AtomicInteger ids = new AtomicInteger();
+  private final Cache<Integer, Template> templates;
+
+  public PreparedRequests() {
+    this(Integer.getInteger("preparedRequests", DEFAULT_SIZE));
+  }
+
+  public PreparedRequests(int size) {
+    templates = CacheBuilder.newBuilder().maximumSize(size).build();
+  }
+
+  public static boolean isPrepare(JsonArray operations) {
+    return isType(operations, IntraOp.Type.PREPARE);
+  }
+
+  public static boolean isExecute(JsonArray operations) {
+    return isType(operations, IntraOp.Type.EXECUTEPREPARED);
+  }
+
+  private static boolean isType(JsonArray operations, IntraOp.Type type) {
+    return operations.size() > 0
+            && type.toString().equalsIgnoreCase(((JsonObject) operations.get(0)).getString(Operations.TYPE));
+  }
+
+  /**
+   * @return the id of the template made of every operation after the PREPARE
+   * @throws IllegalArgumentException when one of them is not valid
+   */
+  public int prepare(JsonArray operations) {
+    JsonArray template = new JsonArray();
+    List<Site> sites = new ArrayList<Site>();
+    for (int i = 1; i < operations.size(); i++) {
+      JsonObject operation = (JsonObject) operations.get(i);
+      validate(i - 1, operation);
+      JsonObject params = operation.getObject(Operations.OP);
+      if (params != null) {
+        for (String name : params.getFieldNames()) {
+          Object value = params.getField(name);
+          if (isMarker(value)) {
+            sites.add(new Site(i - 1, name, -1, mark(value)));
+          } else if (value instanceof JsonArray) {
+            JsonArray array = (JsonArray) value;
+            for (int j = 0; j < array.size(); j++) {
+              if (isMarker(array.get(j))) {
+                sites.add(new Site(i - 1, name, j, mark(array.get(j))));
+              }
+            }
+          }
+        }
+      }
+      template.addObject(operation);
+    }
+    int id = ids.incrementAndGet();
+    templates.put(id, new Template(template, sites));
+    return id;
+  }
+
+  /**
+   * @return the operations of the prepared request with the values of the
+   *         EXECUTEPREPARED operation bound to its markers
+   * @throws IllegalArgumentException when the id is unknown or a marker has
+   *           no value
+   */
+  public JsonArray bind(JsonArray operations) {
+    if (operations.size() != 1) {
+      throw new IllegalArgumentException(IntraOp.Type.EXECUTEPREPARED + " must be the only operation of a request");
+    }
+    JsonObject params = ((JsonObject) operations.get(0)).getObject(Operations.OP);
+    Integer id = params == null ? null : params.getInteger(PID);
+    Template template = id == null ? null : templates.getIfPresent(id);
+    if (template == null) {
+      throw new IllegalArgumentException("No prepared request with id " + id);
+    }
+    JsonObject values = params.getObject(BIND);
+    if (template.sites.isEmpty()) {
+      return template.operations;
+    }
+
+    JsonArray bound = new JsonArray();
+    JsonObject[] copies = new JsonObject[template.operations.size()];
+    for (Site site : template.sites) {
+      Object value = values == null ? null : values.getField(String.valueOf(site.mark));
+      if (value == null) {
+        throw new IllegalArgumentException("No value bound to marker " + site.mark);
+      }
+      JsonObject copy = copies[site.operation];
+      if (copy == null) {
+        JsonObject source = (JsonObject) template.operations.get(site.operation);
+        copy = new JsonObject()
+                .putString(Operations.TYPE, source.getString(Operations.TYPE))
+                .putObject(Operations.OP, source.getObject(Operations.OP).copy());
+        copies[site.operation] = copy;
+      }
+      JsonObject copyParams = copy.getObject(Operations.OP);
+      if (site.element < 0) {
+        copyParams.putValue(site.field, value);
+      } else {
+        JsonArray array = copyParams.getArray(site.field);
+        JsonArray replaced = new JsonArray();
+        for (int j = 0; j < array.size(); j++) {
+          replaced.add(j == site.element ? value : array.get(j));
+        }
+        copyParams.putArray(site.field, replaced);
+      }
+    }
+    for (int i = 0; i < copies.length; i++) {
+      bound.add(copies[i] == null ? template.operations.get(i) : copies[i]);
+    }
+    return bound;
+  }
+
+  private static void validate(int id, JsonObject operation) {
+    String type = operation.getString(Operations.TYPE);
+    IntraOp.Type known = null;
+    if (type != null) {
+      try {
+        known = IntraOp.Type.valueOf(type.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        // reported below
+      }
+    }
+    if (known == null) {
+      throw new IllegalArgumentException("Unknown type " + type + " for operation " + id);
+    }
+    if (known == IntraOp.Type.PREPARE || known == IntraOp.Type.EXECUTEPREPARED) {
+      throw new IllegalArgumentException(known + " can not be prepared, operation " + id);
+    }
+  }
+
+  private static boolean isMarker(Object value) {
+    return value instanceof JsonObject && BINDMARKER.equals(((JsonObject) value).getString(Operations.TYPE));
+  }
+
+  private static int mark(Object marker) {
+    Integer mark = ((JsonObject) marker).getInteger(MARK);
+    if (mark == null) {
+      throw new IllegalArgumentException("A " + BINDMARKER + " needs a mark");
+    }
+    return mark;
+  }
+
+  private static class Template {
+    private final JsonArray operations;
+    private final List<Site> sites;
+
+    Template(JsonArray operations, List<Site> sites) {
+      this.operations = operations;
+      this.sites = sites;
+    }
+  }
+
+  /* a parameter, or an element of an array parameter, that holds a marker */
+  private static class Site {
+    private final int operation;
+    private final String field;
+    private final int element;
+    private final int mark;
+
+    Site(int operation, String field, int element, int mark) {
+      this.operation = operation;
+      this.field = field;
+      this.element = element;
+      this.mark = mark;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * The state of one request, shared copy on write between its operations.
+ *
+ * Every operation used to be handed its own copy of the state, an encode
+ * and parse of everything the request had assumed so far. Now each dispatch
+ * is handed the current snapshot by reference, and a snapshot is never
+ * changed once it is handed out: handlers read it and reply with a delta
+ * holding only the fields they set. Applying a delta builds the next
+ * snapshot, sharing every field the delta does not touch with the one
+ * before.
+ *
+ * A field set to null in a delta is removed. A field holding an object in
+ * both the snapshot and the delta, such as the meta sections of ASSUME, is
+ * merged one level deep, so a delta only carries the entries it adds. The
+ * entries themselves are replaced whole.
+ */
+public class RequestState {
+
+  private JsonObject snapshot;
+
+  public RequestState(JsonObject initial) {
+    snapshot = initial;
+  }
+
+  /**
+   * @return the current state, it must not be changed
+   */
+  public JsonObject snapshot() {
+    return snapshot;
+  }
+
+  public void apply(JsonObject delta) {
+    snapshot = merge(snapshot, delta);
+  }
+
+  static JsonObject merge(JsonObject snapshot, JsonObject delta) {
+    JsonObject next = shallowCopy(snapshot);
+    for (String name : delta.getFieldNames()) {
+      Object value = delta.getField(name);
+      Object current = snapshot.getField(name);
+      if (value instanceof JsonObject && current instanceof JsonObject) {
+        next.putObject(name, replace(shallowCopy((JsonObject) current), (JsonObject) value));
+      } else {
+        replace(next, name, value);
+      }
+    }
+    return next;
+  }
+
+  private static JsonObject replace(JsonObject target, JsonObject entries) {
+    for (String name : entries.getFieldNames()) {
+      replace(target, name, entries.getField(name));
+    }
+    return target;
+  }
+
+  private static void replace(JsonObject target, String name, Object value) {
+    if (value == null) {
+      target.removeField(name);
+    } else {
+      target.putValue(name, value);
+    }
+  }
+
+  private static JsonObject shallowCopy(JsonObject source) {
+    JsonObject copy = new JsonObject();
+    for (String name : source.getFieldNames()) {
+      copy.putValue(name, source.getField(name));
+    }
+    return copy;
+  }
+}
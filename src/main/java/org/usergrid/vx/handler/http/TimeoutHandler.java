@@ -5,13 +5,15 @@ import org.vertx.java.core.Handler;
 public class TimeoutHandler implements Handler<Long> {
 
     private OperationsRequestHandler operationsRequestHandler;
+    private int node;
 
-    public TimeoutHandler(OperationsRequestHandler operationsRequestHandler) {
+    public TimeoutHandler(OperationsRequestHandler operationsRequestHandler, int node) {
         this.operationsRequestHandler = operationsRequestHandler;
+        this.node = node;
     }
 
     @Override
     public void handle(Long timerId) {
-        operationsRequestHandler.timeout();
+        operationsRequestHandler.timeout(node);
     }
 }
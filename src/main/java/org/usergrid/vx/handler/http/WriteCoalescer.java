@@ -0,0 +1,75 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Optimizer pass that groups runs of adjacent SET and COUNTER operations so
+ * they can be written with a single StorageProxy.mutate call by
+ * {@link org.usergrid.vx.server.operations.CoalescedWriteHandler}.
+ *
+ * Operations that use GETREF are left alone since their values are only
+ * known once the referenced operation has answered.
+ */
+public class WriteCoalescer {
+
+  public static final String COALESCED_WRITE = "coalescedwrite";
+  public static final String OPS = "ops";
+
+  private WriteCoalescer() {}
+
+  /**
+   * @return the operation ids split into consecutive groups, a group of more
+   *         than one id is written as one batch
+   */
+  public static List<List<Integer>> group(JsonArray operations) {
+    List<List<Integer>> groups = new ArrayList<List<Integer>>();
+    List<Integer> run = null;
+    for (int i = 0; i < operations.size(); i++) {
+      JsonObject operation = (JsonObject) operations.get(i);
+      if (isCoalescable(operation)) {
+        if (run == null) {
+          run = new ArrayList<Integer>();
+          groups.add(run);
+        }
+        run.add(i);
+      } else {
+        run = null;
+        List<Integer> single = new ArrayList<Integer>(1);
+        single.add(i);
+        groups.add(single);
+      }
+    }
+    return groups;
+  }
+
+  static boolean isCoalescable(JsonObject operation) {
+    String type = operation.getString(Operations.TYPE);
+    if (!"set".equalsIgnoreCase(type) && !"counter".equalsIgnoreCase(type)) {
+      return false;
+    }
+    if (operation.getObject(Operations.OP) == null) {
+      return false;
+    }
+    return OperationDependencies.references(operation).isEmpty();
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http.payload;
+
+import java.util.UUID;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.handler.PayloadRoutingHandler;
+import org.usergrid.vx.server.AdmissionController;
+import org.usergrid.vx.server.LocalDispatcher;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * What the payload handlers share about the HTTP side of a request: its
+ * timeout may be given in the <code>X-Intravert-Timeout</code> header instead
+ * of the payload, and it is cancelled when the client closes the connection.
+ *
+ * It also holds the admission slot of the request, which is released by
+ * whichever comes first of the reply, the connection closing, an error
+ * writing the response or a failure to dispatch the request.
+ */
+final class ClientRequest {
+
+  static final String TIMEOUT_HEADER = "X-Intravert-Timeout";
+
+  private static final String CANCEL_ADDRESS_PREFIX = "request.cancel.";
+  private static final int BAD_REQUEST = 400;
+  private static final int SERVER_ERROR = 500;
+
+  private final HttpServerRequest request;
+  private final LocalDispatcher dispatcher;
+  private final String cancelAddress = CANCEL_ADDRESS_PREFIX + UUID.randomUUID().toString();
+  private volatile AdmissionController.Slot slot;
+  private volatile boolean closed;
+
+  /**
+   * @param onClose also run when the connection is closed, may be null
+   */
+  ClientRequest(HttpServerRequest request, LocalDispatcher dispatcher, final Handler<Void> onClose) {
+    this.request = request;
+    this.dispatcher = dispatcher;
+    request.response().closeHandler(new Handler<Void>() {
+      @Override
+      public void handle(Void event) {
+        closed = true;
+        if (onClose != null) {
+          onClose.handle(null);
+        }
+        release();
+        ClientRequest.this.dispatcher.sendLocal(cancelAddress, new JsonObject());
+      }
+    });
+    request.response().exceptionHandler(new Handler<Throwable>() {
+      @Override
+      public void handle(Throwable event) {
+        release();
+      }
+    });
+  }
+
+  /**
+   * @return the operations, with the timeout of the header and the cancel address
+   * @throws IllegalArgumentException when the timeout header is not a number
+   *         of milliseconds, 0 meaning none
+   */
+  JsonObject bind(JsonObject operations) {
+    String timeout = request.headers().get(TIMEOUT_HEADER);
+    if (timeout != null && operations.getField(PayloadRoutingHandler.TIMEOUT) == null) {
+      operations.putNumber(PayloadRoutingHandler.TIMEOUT, parseTimeout(timeout));
+    }
+    operations.putString(PayloadRoutingHandler.CANCEL_ADDRESS, cancelAddress);
+    return operations;
+  }
+
+  /**
+   * Runs the request once it is admitted. When it can not be handed over it
+   * is released and answered with 500.
+   */
+  void admit(final Handler<Void> run) {
+    dispatcher.admission().admit(request, new Handler<AdmissionController.Slot>() {
+      @Override
+      public void handle(AdmissionController.Slot admitted) {
+        slot = admitted;
+        if (closed) {
+          release();
+          return;
+        }
+        try {
+          run.handle(null);
+        } catch (RuntimeException e) {
+          release();
+          request.response().setStatusCode(SERVER_ERROR);
+          request.response().end(ExceptionUtils.getFullStackTrace(e));
+        }
+      }
+    });
+  }
+
+  private static long parseTimeout(String header) {
+    long timeout;
+    try {
+      timeout = Long.parseLong(header.trim());
+    } catch (NumberFormatException e) {
+      timeout = -1;
+    }
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Invalid " + TIMEOUT_HEADER + " header " + header);
+    }
+    return timeout;
+  }
+
+  /**
+   * Answers a request that can not be run as sent with 400.
+   */
+  static void badRequest(HttpServerRequest request, String message) {
+    request.response().setStatusCode(BAD_REQUEST);
+    request.response().end(new JsonObject()
+            .putString(Operations.EXCEPTION, message)
+            .putString(Operations.EXCEPTION_ID, null).toString());
+  }
+
+  void release() {
+    AdmissionController.Slot admitted = slot;
+    if (admitted != null) {
+      admitted.release();
+    }
+  }
+}
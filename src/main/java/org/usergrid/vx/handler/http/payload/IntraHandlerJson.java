@@ -23,6 +23,8 @@ import org.slf4j.LoggerFactory;
 import org.usergrid.vx.experimental.IntraReq;
 import org.usergrid.vx.handler.IntraHandler;
 import org.usergrid.vx.handler.PayloadRoutingHandler;
+import org.usergrid.vx.server.IntravertMetrics;
+import org.usergrid.vx.server.LocalDispatcher;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
@@ -30,6 +32,8 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.json.JsonObject;
 
+import com.yammer.metrics.core.TimerContext;
+
 
 
 /**
@@ -38,9 +42,9 @@ import org.vertx.java.core.json.JsonObject;
  * Specifically, this class:
  * <ol>
  *   <li>Extracts the request body into a {@link org.usergrid.vx.experimental.IntraReq} object</li>
- *   <li>Sends the IntraReq on the eventBus to the topic
- *     {@link org.usergrid.vx.handler.PayloadRoutingHandler#IHJSON_HANDLER_TOPIC} with an instance
- *     of {@link IHResponse}</li>
+ *   <li>Hands the parsed operations by reference to the topic
+ *     {@link org.usergrid.vx.handler.PayloadRoutingHandler#IHJSON_HANDLER_TOPIC} through the
+ *     {@link org.usergrid.vx.server.LocalDispatcher} with an instance of {@link IHResponse}</li>
  *   <li>IHResponse with send the response via the end method of HttpServerRequest</li>
  * </ol>
  *
@@ -51,6 +55,8 @@ import org.vertx.java.core.json.JsonObject;
 public class IntraHandlerJson implements IntraHandler {
   private static Logger logger = LoggerFactory.getLogger(IntraHandlerJson.class);
 
+  private static final String TRANSPORT = "json";
+
   private static ObjectMapper mapper = new ObjectMapper();
   private static ObjectMapper indentObjectMapper = new ObjectMapper();
 
@@ -59,9 +65,11 @@ public class IntraHandlerJson implements IntraHandler {
   }
 
   private final Vertx vertx;
+  private final LocalDispatcher dispatcher;
 
-  public IntraHandlerJson(Vertx vertx) {
+  public IntraHandlerJson(Vertx vertx, LocalDispatcher dispatcher) {
     this.vertx = vertx;
+    this.dispatcher = dispatcher;
   }
 	
 	@Override
@@ -75,15 +83,26 @@ public class IntraHandlerJson implements IntraHandler {
 
   public void handleRequestAsync(final HttpServerRequest request, Buffer buffer) {
     IntraReq req = null;
+    final TimerContext timer = IntravertMetrics.request(TRANSPORT).time();
     try {
+      TimerContext parsing = IntravertMetrics.parse(TRANSPORT).time();
       req = mapper.readValue(buffer.getBytes(), IntraReq.class);
+      parsing.stop();
       if ( logger.isDebugEnabled()) {
         logger.debug("IntraJsonHandler received payload: \n{}",
                 indentObjectMapper.writeValueAsString(req));
       }
-      vertx.eventBus().send(PayloadRoutingHandler.IHJSON_HANDLER_TOPIC,
-              req.toJson(),
-              new IHResponse(request));
+      final ClientRequest client = new ClientRequest(request, dispatcher, null);
+      final JsonObject operations = client.bind(req.toOperationsJson());
+      client.admit(new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+          dispatcher.send(PayloadRoutingHandler.IHJSON_HANDLER_TOPIC, operations,
+                  new IHResponse(request, client, timer));
+        }
+      });
+    } catch (IllegalArgumentException e) {
+      ClientRequest.badRequest(request, e.getMessage());
     } catch (Exception e) {
       request.response().setStatusCode(404);
       request.response().end(ExceptionUtils.getFullStackTrace(e));
@@ -93,9 +112,13 @@ public class IntraHandlerJson implements IntraHandler {
   private static class IHResponse implements Handler<Message<JsonObject>> {
 
     private final HttpServerRequest request;
+    private final ClientRequest client;
+    private final TimerContext timer;
 
-    IHResponse(HttpServerRequest request) {
+    IHResponse(HttpServerRequest request, ClientRequest client, TimerContext timer) {
       this.request = request;
+      this.client = client;
+      this.timer = timer;
     }
 
     @Override
@@ -105,7 +128,12 @@ public class IntraHandlerJson implements IntraHandler {
                 PayloadRoutingHandler.IHJSON_HANDLER_TOPIC,
                 event.body().toString() );
       }
-      request.response().end(event.body().toString());
+      client.release();
+      TimerContext serializing = IntravertMetrics.serialize(TRANSPORT).time();
+      String body = event.body().toString();
+      serializing.stop();
+      request.response().end(body);
+      timer.stop();
     }
   }
 
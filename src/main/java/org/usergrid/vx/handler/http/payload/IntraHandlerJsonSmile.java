@@ -0,0 +1,149 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http.payload;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.codehaus.jackson.smile.SmileGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.vx.experimental.IntraReq;
+import org.usergrid.vx.handler.IntraHandler;
+import org.usergrid.vx.handler.PayloadRoutingHandler;
+import org.usergrid.vx.server.IntravertMetrics;
+import org.usergrid.vx.server.LocalDispatcher;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
+
+import com.yammer.metrics.core.TimerContext;
+
+/**
+ * Entry point for the Smile (binary JSON) transport used by
+ * {@link org.usergrid.vx.client.IntraClient2.Transport#SMILE}.
+ *
+ * The request is decoded directly from the vert.x {@link Buffer} and the
+ * response is encoded straight into the outgoing Buffer through
+ * {@link JsonElementWriter}, so no intermediate JSON text is produced in
+ * either direction. Reads hand names and values over as slices of the
+ * buffers Cassandra returned, and they are written as raw Smile binary
+ * rather than 7 bit encoded.
+ */
+public class IntraHandlerJsonSmile implements IntraHandler {
+  private static Logger logger = LoggerFactory.getLogger(IntraHandlerJsonSmile.class);
+
+  public static final String CONTENT_TYPE = "application/x-jackson-smile";
+
+  private static final String TRANSPORT = "smile";
+
+  private static final SmileFactory smileFactory = new SmileFactory()
+          .configure(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT, false);
+  private static final ObjectMapper mapper = new ObjectMapper(smileFactory);
+
+  private final Vertx vertx;
+  private final LocalDispatcher dispatcher;
+
+  public IntraHandlerJsonSmile(Vertx vertx, LocalDispatcher dispatcher) {
+    this.vertx = vertx;
+    this.dispatcher = dispatcher;
+  }
+
+  @Override
+  public void handle(final HttpServerRequest request) {
+    request.bodyHandler(new Handler<Buffer>() {
+      public void handle(Buffer buffer) {
+        handleRequestAsync(request, buffer);
+      }
+    });
+  }
+
+  @Override
+  public void handleRequestAsync(final HttpServerRequest request, Buffer buffer) {
+    final TimerContext timer = IntravertMetrics.request(TRANSPORT).time();
+    try {
+      TimerContext parsing = IntravertMetrics.parse(TRANSPORT).time();
+      IntraReq req = mapper.readValue(new ByteBufInputStream(buffer.getByteBuf()), IntraReq.class);
+      parsing.stop();
+      final ClientRequest client = new ClientRequest(request, dispatcher, null);
+      final JsonObject operations = client.bind(
+              req.toOperationsJson().putBoolean(PayloadRoutingHandler.BUFFERS, true));
+      client.admit(new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+          dispatcher.send(PayloadRoutingHandler.IHJSON_HANDLER_TOPIC, operations,
+                  new SmileResponse(request, client, timer));
+        }
+      });
+    } catch (IllegalArgumentException e) {
+      ClientRequest.badRequest(request, e.getMessage());
+    } catch (Exception e) {
+      request.response().setStatusCode(404);
+      request.response().end(ExceptionUtils.getFullStackTrace(e));
+    }
+  }
+
+  /**
+   * Encodes the JsonObject tree into a Smile document held in a vert.x Buffer.
+   */
+  public static Buffer encode(JsonObject body) throws IOException {
+    Buffer out = new Buffer();
+    JsonGenerator generator = smileFactory.createJsonGenerator(new ByteBufOutputStream(out.getByteBuf()));
+    JsonElementWriter.write(generator, body);
+    generator.close();
+    return out;
+  }
+
+  private static class SmileResponse implements Handler<Message<JsonObject>> {
+
+    private final HttpServerRequest request;
+    private final ClientRequest client;
+    private final TimerContext timer;
+
+    SmileResponse(HttpServerRequest request, ClientRequest client, TimerContext timer) {
+      this.request = request;
+      this.client = client;
+      this.timer = timer;
+    }
+
+    @Override
+    public void handle(Message<JsonObject> event) {
+      client.release();
+      try {
+        TimerContext serializing = IntravertMetrics.serialize(TRANSPORT).time();
+        Buffer body = encode(event.body());
+        serializing.stop();
+        request.response().putHeader("Content-Type", CONTENT_TYPE);
+        request.response().end(body);
+        timer.stop();
+      } catch (Exception e) {
+        logger.error("Unable to encode smile response", e);
+        request.response().setStatusCode(500);
+        request.response().end(ExceptionUtils.getFullStackTrace(e));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http.payload;
+
+import java.util.UUID;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.vx.experimental.IntraReq;
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.handler.IntraHandler;
+import org.usergrid.vx.handler.PayloadRoutingHandler;
+import org.usergrid.vx.handler.http.OperationsRequestHandler;
+import org.usergrid.vx.server.IntravertMetrics;
+import org.usergrid.vx.server.LocalDispatcher;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.json.impl.Json;
+
+import com.yammer.metrics.core.TimerContext;
+
+/**
+ * Same payload as {@link IntraHandlerJson}, but the response is written with
+ * chunked transfer encoding while the request runs. Each operation result is
+ * written once it and the results before it are known, as one chunk, or as
+ * chunks of about 64KB when it is larger, so the whole response is never
+ * held as a single string. Each result is still read from Cassandra in full
+ * before it is written. The body is the same JSON document the non
+ * streaming handler produces.
+ *
+ * When the client reads slower than the results come in and the write queue
+ * of the response fills up, the request is paused, so no further operations
+ * are dispatched until the queue drains.
+ */
+public class IntraHandlerJsonStream implements IntraHandler {
+  private static Logger logger = LoggerFactory.getLogger(IntraHandlerJsonStream.class);
+
+  private static final String STREAM_ADDRESS_PREFIX = "request.stream.";
+  private static final String TRANSPORT = "stream";
+
+  private static ObjectMapper mapper = new ObjectMapper();
+
+  private final Vertx vertx;
+  private final LocalDispatcher dispatcher;
+
+  public IntraHandlerJsonStream(Vertx vertx, LocalDispatcher dispatcher) {
+    this.vertx = vertx;
+    this.dispatcher = dispatcher;
+  }
+
+  @Override
+  public void handle(final HttpServerRequest request) {
+    request.bodyHandler(new Handler<Buffer>() {
+      public void handle(Buffer buffer) {
+        handleRequestAsync(request, buffer);
+      }
+    });
+  }
+
+  public void handleRequestAsync(final HttpServerRequest request, Buffer buffer) {
+    final String address = STREAM_ADDRESS_PREFIX + UUID.randomUUID().toString();
+    final StreamWriter writer = new StreamWriter(request.response(), dispatcher,
+            address + OperationsRequestHandler.FLOW_SUFFIX);
+    final JsonObject operations;
+    final ClientRequest client;
+    final TimerContext timer = IntravertMetrics.request(TRANSPORT).time();
+    try {
+      TimerContext parsing = IntravertMetrics.parse(TRANSPORT).time();
+      IntraReq req = mapper.readValue(buffer.getBytes(), IntraReq.class);
+      parsing.stop();
+      client = new ClientRequest(request, dispatcher, new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+          dispatcher.unregisterLocalHandler(address);
+          writer.closed = true;
+        }
+      });
+      operations = client.bind(req.toOperationsJson());
+    } catch (IllegalArgumentException e) {
+      ClientRequest.badRequest(request, e.getMessage());
+      return;
+    } catch (Exception e) {
+      request.response().setStatusCode(404);
+      request.response().end(ExceptionUtils.getFullStackTrace(e));
+      return;
+    }
+    client.admit(new Handler<Void>() {
+      @Override
+      public void handle(Void event) {
+        stream(address, writer, client, operations, timer);
+      }
+    });
+  }
+
+  private void stream(final String address, final StreamWriter writer, final ClientRequest client,
+                      JsonObject operations, final TimerContext timer) {
+    dispatcher.registerLocalHandler(address, writer);
+    writer.begin();
+    dispatcher.send(PayloadRoutingHandler.IHJSON_HANDLER_TOPIC,
+            operations.putString(PayloadRoutingHandler.STREAM_ADDRESS, address),
+            new Handler<Message<JsonObject>>() {
+              @Override
+              public void handle(Message<JsonObject> event) {
+                client.release();
+                dispatcher.unregisterLocalHandler(address);
+                writer.end(event.body());
+                timer.stop();
+              }
+            });
+  }
+
+  /**
+   * Writes the opsRes entries as they are streamed and closes the document
+   * with the exception fields of the final reply.
+   */
+  private static class StreamWriter implements Handler<Message<JsonObject>> {
+
+    /* results are written in chunks of about this many bytes */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final HttpServerResponse response;
+    private final LocalDispatcher dispatcher;
+    private final String flowAddress;
+    private boolean first = true;
+    private boolean closed = false;
+    private boolean paused = false;
+
+    StreamWriter(HttpServerResponse response, LocalDispatcher dispatcher, String flowAddress) {
+      this.response = response;
+      this.dispatcher = dispatcher;
+      this.flowAddress = flowAddress;
+    }
+
+    void begin() {
+      response.setChunked(true);
+      response.putHeader("Content-Type", "application/json");
+      response.write("{\"" + Operations.OPS_RES + "\":{");
+    }
+
+    @Override
+    public void handle(Message<JsonObject> event) {
+      if (closed) {
+        return;
+      }
+      String id = event.body().getString(Operations.ID);
+      Object result = event.body().getField(OperationsRequestHandler.RESULT);
+      if (logger.isDebugEnabled()) {
+        logger.debug("streaming result of operation {}", id);
+      }
+      TimerContext serializing = IntravertMetrics.serialize(TRANSPORT).time();
+      Buffer chunk = new Buffer(CHUNK_SIZE);
+      chunk.appendString((first ? "" : ",") + Json.encode(id) + ":");
+      first = false;
+      if (result instanceof JsonArray) {
+        chunk.appendString("[");
+        boolean firstElement = true;
+        for (Object element : (JsonArray) result) {
+          chunk.appendString((firstElement ? "" : ",") + encode(element));
+          firstElement = false;
+          if (chunk.length() >= CHUNK_SIZE) {
+            response.write(chunk);
+            chunk = new Buffer(CHUNK_SIZE);
+          }
+        }
+        chunk.appendString("]");
+      } else {
+        chunk.appendString(encode(result));
+      }
+      response.write(chunk);
+      serializing.stop();
+      if (!paused && response.writeQueueFull()) {
+        pause();
+      }
+    }
+
+    private void pause() {
+      paused = true;
+      dispatcher.sendLocal(flowAddress, new JsonObject().putBoolean(OperationsRequestHandler.PAUSE, true));
+      response.drainHandler(new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+          paused = false;
+          dispatcher.sendLocal(flowAddress, new JsonObject().putBoolean(OperationsRequestHandler.PAUSE, false));
+        }
+      });
+    }
+
+    private static String encode(Object value) {
+      if (value instanceof JsonObject) {
+        return ((JsonObject) value).encode();
+      } else if (value instanceof JsonArray) {
+        return ((JsonArray) value).encode();
+      }
+      return Json.encode(value);
+    }
+
+    void end(JsonObject reply) {
+      if (closed) {
+        return;
+      }
+      response.end("},\"" + Operations.EXCEPTION + "\":" + Json.encode(reply.getString(Operations.EXCEPTION))
+              + ",\"" + Operations.EXCEPTION_ID + "\":" + Json.encode(reply.getString(Operations.EXCEPTION_ID)) + "}");
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.handler.http.payload;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Walks a vert.x {@link JsonObject} tree and writes it straight into a Jackson
+ * {@link JsonGenerator}. This lets binary transports such as Smile encode a
+ * response without first rendering it as a JSON string.
+ */
+public class JsonElementWriter {
+
+  private JsonElementWriter() {}
+
+  public static void write(JsonGenerator generator, JsonObject object) throws IOException {
+    generator.writeStartObject();
+    for (String name : object.getFieldNames()) {
+      generator.writeFieldName(name);
+      writeValue(generator, object.getField(name));
+    }
+    generator.writeEndObject();
+  }
+
+  public static void write(JsonGenerator generator, JsonArray array) throws IOException {
+    generator.writeStartArray();
+    for (Object element : array) {
+      writeValue(generator, element);
+    }
+    generator.writeEndArray();
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void writeValue(JsonGenerator generator, Object value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else if (value instanceof String) {
+      generator.writeString((String) value);
+    } else if (value instanceof JsonObject) {
+      write(generator, (JsonObject) value);
+    } else if (value instanceof JsonArray) {
+      write(generator, (JsonArray) value);
+    } else if (value instanceof Map) {
+      write(generator, new JsonObject((Map<String, Object>) value));
+    } else if (value instanceof List) {
+      write(generator, new JsonArray((List<Object>) value));
+    } else if (value instanceof byte[]) {
+      generator.writeBinary((byte[]) value);
+    } else if (value instanceof ByteBuffer) {
+      writeBinary(generator, (ByteBuffer) value);
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      generator.writeNumber(((Number) value).intValue());
+    } else if (value instanceof Long) {
+      generator.writeNumber((Long) value);
+    } else if (value instanceof Double || value instanceof Float) {
+      generator.writeNumber(((Number) value).doubleValue());
+    } else if (value instanceof BigInteger) {
+      generator.writeNumber((BigInteger) value);
+    } else if (value instanceof BigDecimal) {
+      generator.writeNumber((BigDecimal) value);
+    } else if (value instanceof Date) {
+      generator.writeNumber(((Date) value).getTime());
+    } else if (value instanceof UUID) {
+      generator.writeString(value.toString());
+    } else if (value instanceof InetAddress) {
+      generator.writeString(((InetAddress) value).getHostAddress());
+    } else {
+      throw new IllegalArgumentException(value.getClass() + " is not a supported result type");
+    }
+  }
+
+  /* writes a heap buffer from its backing array, only direct buffers are copied out */
+  private static void writeBinary(JsonGenerator generator, ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray()) {
+      generator.writeBinary(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    } else {
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.duplicate().get(bytes);
+      generator.writeBinary(bytes);
+    }
+  }
+}
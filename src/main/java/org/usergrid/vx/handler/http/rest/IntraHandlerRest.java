@@ -4,6 +4,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.usergrid.vx.experimental.IntraReq;
 import org.usergrid.vx.handler.IntraHandlerBase;
+import org.usergrid.vx.handler.PayloadRoutingHandler;
+import org.usergrid.vx.server.LocalDispatcher;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
@@ -18,8 +20,11 @@ import org.vertx.java.core.json.JsonObject;
 public abstract class IntraHandlerRest extends IntraHandlerBase {
   private final Logger log = LoggerFactory.getLogger(IntraHandlerRest.class);
   
-  public IntraHandlerRest(Vertx vertx) {
+  private final LocalDispatcher dispatcher;
+
+  public IntraHandlerRest(Vertx vertx, LocalDispatcher dispatcher) {
     super(vertx);
+    this.dispatcher = dispatcher;
   }
 
   @Override
@@ -38,7 +43,7 @@ public abstract class IntraHandlerRest extends IntraHandlerBase {
   }
   
   protected void delegateAndReply(final HttpServerRequest request, IntraReq req) {
-    vertx.eventBus().send("request.json", req.toJson(), new Handler<Message<JsonObject>>() {
+    dispatcher.send(PayloadRoutingHandler.IHJSON_HANDLER_TOPIC, req.toOperationsJson(), new Handler<Message<JsonObject>>() {
       @Override
       public void handle(Message<JsonObject> event) {
         request.response().end(event.body().toString());
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.usergrid.vx.experimental.IntraReq;
 import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.LocalDispatcher;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -15,8 +16,8 @@ import org.vertx.java.core.http.HttpServerRequest;
 public class KeyspaceMetaHandler extends IntraHandlerRest {
   private Logger log = LoggerFactory.getLogger(KeyspaceMetaHandler.class);
 
-  public KeyspaceMetaHandler(Vertx vertx) {
-    super(vertx);
+  public KeyspaceMetaHandler(Vertx vertx, LocalDispatcher dispatcher) {
+    super(vertx, dispatcher);
   }
 
   public void handleGet(final HttpServerRequest request, Buffer buffer, IntraReq req) {
@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.usergrid.vx.experimental.IntraReq;
 import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.LocalDispatcher;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -17,8 +18,8 @@ import org.vertx.java.core.http.HttpServerRequest;
 public class SystemMetaHandler extends IntraHandlerRest {
   private Logger log = LoggerFactory.getLogger(SystemMetaHandler.class);
 
-  public SystemMetaHandler(Vertx vertx) {
-    super(vertx);
+  public SystemMetaHandler(Vertx vertx, LocalDispatcher dispatcher) {
+    super(vertx, dispatcher);
   }
 
   @Override
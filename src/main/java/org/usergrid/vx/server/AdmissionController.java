@@ -0,0 +1,267 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.server;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+
+/**
+ * Bounds the work one node takes on.
+ *
+ * A request is admitted while fewer than <code>maxRequests</code> requests
+ * are running and fewer than <code>maxStorageOps</code> reads and writes are
+ * in flight on the worker pools. Otherwise it waits in a queue of at most
+ * <code>admissionQueue</code> requests for <code>admissionTimeout</code>
+ * milliseconds. A request that finds the queue full, or is still waiting
+ * when its time is up, is answered at once with 503 and a Retry-After
+ * header, rather than timing out deep in the pipeline once Cassandra is
+ * overloaded. Every admitted request holds a {@link Slot} that must be
+ * released once it is answered or its client goes away.
+ *
+ * <code>maxStorageOps</code> is only looked at when a request is admitted,
+ * as a sign that the worker pools are backed up. It does not bound the
+ * storage operations of a request once it runs, those are bounded by the
+ * size of the pools.
+ *
+ * The rejects are counted in the metrics of the node. The queue depth, the
+ * running requests and the storage operations in flight are published as
+ * gauges by the controller of the server, see {@link #publishMetrics()}.
+ */
+public class AdmissionController {
+
+  private static final String RETRY_AFTER = "Retry-After";
+  private static final int SERVICE_UNAVAILABLE = 503;
+
+  private final Vertx vertx;
+  private final int maxRequests;
+  private final int maxStorageOps;
+  private final int maxQueued;
+  private final long queueTimeout;
+
+  private final Queue<Waiter> waiters = new LinkedList<Waiter>();
+  private int running;
+  private final AtomicInteger storageOps = new AtomicInteger();
+
+  private static volatile AdmissionController published;
+
+  static {
+    Metrics.newGauge(AdmissionController.class, "QueueDepth", new Gauge<Integer>() {
+      @Override
+      public Integer value() {
+        AdmissionController controller = published;
+        return controller == null ? 0 : controller.queued();
+      }
+    });
+    Metrics.newGauge(AdmissionController.class, "RunningRequests", new Gauge<Integer>() {
+      @Override
+      public Integer value() {
+        AdmissionController controller = published;
+        return controller == null ? 0 : controller.running();
+      }
+    });
+    Metrics.newGauge(AdmissionController.class, "StorageOpsInFlight", new Gauge<Integer>() {
+      @Override
+      public Integer value() {
+        AdmissionController controller = published;
+        return controller == null ? 0 : controller.storageOps.get();
+      }
+    });
+  }
+
+  private final Counter rejects = Metrics.newCounter(AdmissionController.class, "Rejects");
+  private final Counter timeouts = Metrics.newCounter(AdmissionController.class, "QueueTimeouts");
+
+  public AdmissionController(Vertx vertx) {
+    this(vertx, Integer.getInteger("maxRequests", 256), Integer.getInteger("maxStorageOps", 1024),
+            Integer.getInteger("admissionQueue", 1024), Long.getLong("admissionTimeout", 1000));
+  }
+
+  public AdmissionController(Vertx vertx, int maxRequests, int maxStorageOps, int maxQueued, long queueTimeout) {
+    this.vertx = vertx;
+    this.maxRequests = maxRequests;
+    this.maxStorageOps = maxStorageOps;
+    this.maxQueued = maxQueued;
+    this.queueTimeout = queueTimeout;
+  }
+
+  /**
+   * Publishes the queue depth, running requests and storage operations of
+   * this controller as the gauges of the node, in place of the controller
+   * that published them before. The gauges are registered once, metrics
+   * keeps the first gauge registered under a name.
+   */
+  public void publishMetrics() {
+    published = this;
+  }
+
+  /**
+   * Runs admitted, on the context of the caller, once the request may run.
+   * Runs rejected instead when the queue is full or the wait times out.
+   */
+  public void admit(Handler<Void> admitted, final Handler<Void> rejected) {
+    boolean run = false;
+    boolean queued = false;
+    synchronized (this) {
+      if (waiters.isEmpty() && hasRoom()) {
+        running++;
+        run = true;
+      } else if (waiters.size() < maxQueued) {
+        // the timer is set before drain can see the waiter and cancel it
+        final Waiter waiter = new Waiter(vertx.currentContext(), admitted);
+        waiter.timerId = vertx.setTimer(queueTimeout, new Handler<Long>() {
+          @Override
+          public void handle(Long event) {
+            boolean expired;
+            synchronized (AdmissionController.this) {
+              expired = waiters.remove(waiter);
+            }
+            if (expired) {
+              timeouts.inc();
+              rejects.inc();
+              rejected.handle(null);
+            }
+          }
+        });
+        waiters.add(waiter);
+        queued = true;
+      }
+    }
+    if (run) {
+      admitted.handle(null);
+    } else if (!queued) {
+      rejects.inc();
+      rejected.handle(null);
+    }
+  }
+
+  /**
+   * Admits an HTTP request, answering 503 when it is rejected. The request
+   * runs with the slot it has to release.
+   */
+  public void admit(final HttpServerRequest request, final Handler<Slot> admitted) {
+    admit(new Handler<Void>() {
+      @Override
+      public void handle(Void event) {
+        admitted.handle(new Slot());
+      }
+    }, new Handler<Void>() {
+      @Override
+      public void handle(Void event) {
+        serviceUnavailable(request);
+      }
+    });
+  }
+
+  void release() {
+    synchronized (this) {
+      running--;
+    }
+    drain();
+  }
+
+  public void storageOpStarted() {
+    storageOps.incrementAndGet();
+  }
+
+  public void storageOpFinished() {
+    storageOps.decrementAndGet();
+    drain();
+  }
+
+  public synchronized int queued() {
+    return waiters.size();
+  }
+
+  public synchronized int running() {
+    return running;
+  }
+
+  public long rejected() {
+    return rejects.count();
+  }
+
+  private boolean hasRoom() {
+    return running < maxRequests && storageOps.get() < maxStorageOps;
+  }
+
+  private void drain() {
+    while (true) {
+      final Waiter next;
+      synchronized (this) {
+        if (waiters.isEmpty() || !hasRoom()) {
+          return;
+        }
+        next = waiters.poll();
+        running++;
+      }
+      vertx.cancelTimer(next.timerId);
+      if (next.context == null) {
+        next.admitted.handle(null);
+      } else {
+        next.context.runOnContext(next.admitted);
+      }
+    }
+  }
+
+  private static void serviceUnavailable(HttpServerRequest request) {
+    request.response().setStatusCode(SERVICE_UNAVAILABLE);
+    request.response().putHeader(RETRY_AFTER, "1");
+    request.response().end(new JsonObject()
+            .putString(Operations.EXCEPTION, "Server is overloaded, retry later")
+            .putString(Operations.EXCEPTION_ID, null).toString());
+  }
+
+  /**
+   * The room one admitted request takes. Releasing it again does nothing, so
+   * every path that ends the request can release it.
+   */
+  public final class Slot {
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Slot() {}
+
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        AdmissionController.this.release();
+      }
+    }
+  }
+
+  private static class Waiter {
+    private final Context context;
+    private final Handler<Void> admitted;
+    private long timerId;
+
+    Waiter(Context context, Handler<Void> admitted) {
+      this.context = context;
+      this.admitted = admitted;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.json.JsonObject;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+
+/**
+ * Diagnostics of the operation pipeline, logged to the
+ * <code>org.usergrid.vx.diagnostics</code> logger.
+ *
+ * Every request is given a trace id, and each of its operations is traced as
+ * <code>trace=&lt;request&gt;.&lt;operation id&gt;</code>, so the lines of
+ * one request can be found together. Lines are written as key=value pairs.
+ *
+ * The handlers never write the lines themselves. Lines are handed to a
+ * single background thread through a bounded queue, and are dropped (and
+ * counted) when the queue is full. Failed operations are logged at WARN
+ * without sampling, at most <code>diagnosticFailureRate</code> lines a
+ * second. Only a <code>diagnosticSampling</code> fraction of the other
+ * operations is traced, at INFO, at most <code>diagnosticRate</code> lines a
+ * second, so a burst of traces does not crowd out the failures. The operations themselves are dumped only
+ * when the <code>diagnosticPayloads</code> system property is set.
+ */
+public final class DiagnosticLog {
+
+  private static final Logger logger = LoggerFactory.getLogger("org.usergrid.vx.diagnostics");
+
+  private static final double sampling = Double.parseDouble(System.getProperty("diagnosticSampling", "0.01"));
+  private static final boolean payloads = Boolean.getBoolean("diagnosticPayloads");
+  private static final RateLimiter limiter =
+          RateLimiter.create(Double.parseDouble(System.getProperty("diagnosticRate", "10")));
+  private static final RateLimiter failureLimiter =
+          RateLimiter.create(Double.parseDouble(System.getProperty("diagnosticFailureRate", "100")));
+
+  private static final AtomicLong traces = new AtomicLong(System.nanoTime());
+  private static final Counter dropped = Metrics.newCounter(DiagnosticLog.class, "Dropped");
+
+  private static final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(Integer.getInteger("diagnosticQueue", 1024)),
+          new NamedThreadFactory("IntravertDiagnostics"),
+          new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable line, ThreadPoolExecutor executor) {
+              dropped.inc();
+            }
+          });
+
+  private DiagnosticLog() {}
+
+  /**
+   * @return a new trace id for a request
+   */
+  public static String newTrace() {
+    return Long.toHexString(traces.incrementAndGet());
+  }
+
+  /**
+   * Traces an operation that ran, when it is sampled.
+   */
+  public static void executed(JsonObject operation, long nanos) {
+    if (!logger.isInfoEnabled() || ThreadLocalRandom.current().nextDouble() >= sampling) {
+      return;
+    }
+    StringBuilder line = describe(operation).append(" event=executed micros=")
+            .append(TimeUnit.NANOSECONDS.toMicros(nanos));
+    log(line, false, null);
+  }
+
+  /**
+   * Traces an event within an operation, when it is sampled.
+   */
+  public static void event(JsonObject operation, String event) {
+    if (!logger.isInfoEnabled() || ThreadLocalRandom.current().nextDouble() >= sampling) {
+      return;
+    }
+    log(describe(operation).append(" event=").append(event), false, null);
+  }
+
+  /**
+   * Logs an operation that failed. The stack trace is only logged at DEBUG.
+   */
+  public static void failed(JsonObject operation, Throwable error) {
+    if (!logger.isWarnEnabled()) {
+      return;
+    }
+    StringBuilder line = describe(operation).append(" event=failed error=\"").append(error).append('"');
+    log(line, true, logger.isDebugEnabled() ? error : null);
+  }
+
+  /**
+   * @return the number of lines dropped by the rate limit or a full queue
+   */
+  public static long dropped() {
+    return dropped.count();
+  }
+
+  private static StringBuilder describe(JsonObject operation) {
+    StringBuilder line = new StringBuilder(128)
+            .append("trace=").append(operation.getString(Operations.TRACE)).append('.').append(operation.getField(Operations.ID))
+            .append(" type=").append(operation.getString(Operations.TYPE));
+    if (payloads) {
+      // encoded on the calling thread, the operation may change once it is answered
+      line.append(" op=").append(operation.getObject(Operations.OP));
+    }
+    return line;
+  }
+
+  private static void log(final StringBuilder line, final boolean warn, final Throwable error) {
+    if (!(warn ? failureLimiter : limiter).tryAcquire(0, TimeUnit.MICROSECONDS)) {
+      dropped.inc();
+      return;
+    }
+    writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (error != null) {
+          logger.warn(line.toString(), error);
+        } else if (warn) {
+          logger.warn(line.toString());
+        } else {
+          logger.info(line.toString());
+        }
+      }
+    });
+  }
+}
@@ -22,8 +22,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.usergrid.vx.handler.PayloadRoutingHandler;
 import org.usergrid.vx.handler.http.payload.IntraHandlerJson;
+import org.usergrid.vx.handler.http.payload.IntraHandlerJsonSmile;
+import org.usergrid.vx.handler.http.payload.IntraHandlerJsonStream;
 import org.usergrid.vx.handler.http.HelloHandler;
+import org.usergrid.vx.handler.http.MetricsHandler;
 import org.usergrid.vx.handler.http.NoMatchHandler;
+import org.usergrid.vx.handler.http.WriteCoalescer;
 import org.usergrid.vx.handler.http.rest.KeyspaceMetaHandler;
 import org.usergrid.vx.handler.http.rest.SystemMetaHandler;
 import org.usergrid.vx.server.operations.*;
@@ -36,6 +40,7 @@ public class IntravertCassandraServer implements CassandraDaemon.Server {
   private final Logger logger = LoggerFactory.getLogger(IntravertCassandraServer.class);
   private static Vertx vertx;
   private static RouteMatcher rm;
+  private static LocalDispatcher dispatcher;
   private static IntravertClusterNotifier intravertClusterNotifier;
   private static final AtomicBoolean running = new AtomicBoolean(false);
   private final String basePath;
@@ -50,16 +55,20 @@ public class IntravertCassandraServer implements CassandraDaemon.Server {
     logger.info("Starting IntravertCassandraServer with base path {}", basePath);
     PlatformLocator pl = new PlatformLocator();
     vertx = pl.factory.createPlatformManager().vertx();
+    dispatcher = new LocalDispatcher(vertx);
+    dispatcher.admission().publishMetrics();
     rm = new RouteMatcher();
     // TODO Should we use a single instance of HelloHandler here?
     rm.put(String.format("%s/hello", basePath), new HelloHandler());
     rm.get(String.format("%s/hello", basePath), new HelloHandler());
     rm.post(String.format("%s/hello", basePath), new HelloHandler());
-    rm.post(String.format("%s/intrareq-json", basePath), new IntraHandlerJson(vertx));
-    //rm.post(String.format("%s/intrareq-jsonsmile", basePath), new IntraHandlerJsonSmile(vertx));
+    rm.post(String.format("%s/intrareq-json", basePath), new IntraHandlerJson(vertx, dispatcher));
+    rm.post(String.format("%s/intrareq-smile", basePath), new IntraHandlerJsonSmile(vertx, dispatcher));
+    rm.post(String.format("%s/intrareq-json-stream", basePath), new IntraHandlerJsonStream(vertx, dispatcher));
+    rm.get(String.format("%s/metrics", basePath), new MetricsHandler());
 
-    SystemMetaHandler systemMetaHandler = new SystemMetaHandler(vertx);
-    KeyspaceMetaHandler keyspaceMetaHandler = new KeyspaceMetaHandler(vertx);
+    SystemMetaHandler systemMetaHandler = new SystemMetaHandler(vertx, dispatcher);
+    KeyspaceMetaHandler keyspaceMetaHandler = new KeyspaceMetaHandler(vertx, dispatcher);
 
     rm.get(String.format("%s/intrareq-rest/", basePath),systemMetaHandler);
     rm.get(String.format("%s/intrareq-rest/:ks/", basePath), keyspaceMetaHandler);
@@ -67,8 +76,8 @@ public class IntravertCassandraServer implements CassandraDaemon.Server {
     rm.delete(String.format("%s/intrareq-rest/:ks/", basePath),keyspaceMetaHandler);
 
     rm.noMatch(new NoMatchHandler());
-    registerOperationHandlers(vertx);
-    registerRequestHandler(vertx);
+    registerOperationHandlers(vertx, dispatcher);
+    registerRequestHandler(vertx, dispatcher);
     vertx.createHttpServer().requestHandler(rm).listen(PORT);
     logger.info("IntravertCassandraServer started, listening on [" + PORT + "]");
     running.set(true);
@@ -86,34 +95,39 @@ public class IntravertCassandraServer implements CassandraDaemon.Server {
     return running.get();
   }
 
-  public static void registerRequestHandler(Vertx x) {
-    x.eventBus().registerHandler(PayloadRoutingHandler.IHJSON_HANDLER_TOPIC,
-            new PayloadRoutingHandler(vertx));
+  public static void registerRequestHandler(Vertx x, LocalDispatcher d) {
+    d.registerHandler(PayloadRoutingHandler.IHJSON_HANDLER_TOPIC,
+            new PayloadRoutingHandler(x, d));
   }
    
-  public static void registerOperationHandlers(Vertx x) {
-    x.eventBus().registerHandler("operations.autotimestamp", new AutotimestampHandler() );
-    x.eventBus().registerHandler("operations.batchset", new BatchHandler() );
-    x.eventBus().registerHandler("operations.componentselect", new ComponentSelectHandler() );
-    x.eventBus().registerHandler("operations.createkeyspace", new CreateKeyspaceHandler());
-    x.eventBus().registerHandler("operations.setkeyspace", new SetKeyspaceHandler());
-    x.eventBus().registerHandler("operations.createcolumnfamily", new CreateColumnFamilyHandler());
-    x.eventBus().registerHandler("operations.listkeyspaces", new ListKeyspacesHandler());
-    x.eventBus().registerHandler("operations.listcolumnfamily", new ListColumnFamilyHandler());
-    x.eventBus().registerHandler("operations.set", new SetHandler());
-    x.eventBus().registerHandler("operations.setcolumnfamily", new SetColumnFamilyHandler());
-    x.eventBus().registerHandler("operations.assume", new AssumeHandler());
-    x.eventBus().registerHandler("operations.get", new GetHandler(x.eventBus()));
-    x.eventBus().registerHandler("operations.slice", new SliceHandler(x.eventBus()));
-    x.eventBus().registerHandler("operations.cqlquery", new CqlQueryHandler());
-    x.eventBus().registerHandler("operations.counter", new CounterHandler());
-    x.eventBus().registerHandler("operations.consistency", new ConsistencyHandler());
-    x.eventBus().registerHandler("operations.createfilter", new CreateFilterHandler(x.eventBus()));
-    x.eventBus().registerHandler("operations.createprocessor", new CreateProcessorHandler(x.eventBus()));
-    x.eventBus().registerHandler("operations.filtermode", new FilterModeHandler());
-    x.eventBus().registerHandler("operations.createmultiprocess", new CreateMultiProcessHandler(x.eventBus()));
-    x.eventBus().registerHandler("operations.createserviceprocess", new CreateServiceProcessHandler(x.eventBus()));
-    x.eventBus().registerHandler("operations.resultmode", new ResultModeHandler());
+  public static void registerOperationHandlers(Vertx x, LocalDispatcher d) {
+    d.registerHandler("operations.autotimestamp", new AutotimestampHandler() );
+    d.registerWriteHandler("operations.batchset", new BatchHandler() );
+    d.registerHandler("operations.componentselect", new ComponentSelectHandler() );
+    d.registerWriteHandler("operations.createkeyspace", new CreateKeyspaceHandler());
+    d.registerHandler("operations.setkeyspace", new SetKeyspaceHandler());
+    d.registerWriteHandler("operations.createcolumnfamily", new CreateColumnFamilyHandler());
+    d.registerHandler("operations.listkeyspaces", new ListKeyspacesHandler());
+    d.registerHandler("operations.listcolumnfamily", new ListColumnFamilyHandler());
+    d.registerWriteHandler("operations.set", new SetHandler());
+    d.registerHandler("operations.setcolumnfamily", new SetColumnFamilyHandler());
+    d.registerHandler("operations.assume", new AssumeHandler());
+    d.registerReadHandler("operations.get", new GetHandler(x.eventBus()));
+    d.registerReadHandler("operations.slice", new SliceHandler(x.eventBus()));
+    d.registerReadHandler("operations.slicebynames", new SliceByNamesHandler(x.eventBus()));
+    d.registerReadHandler("operations.multiget", new MultiReadHandler(x.eventBus(), false));
+    d.registerReadHandler("operations.multislice", new MultiReadHandler(x.eventBus(), true));
+    d.registerReadHandler("operations.rangeslice", new RangeSliceHandler());
+    d.registerReadHandler("operations.cqlquery", new CqlQueryHandler());
+    d.registerWriteHandler("operations.counter", new CounterHandler());
+    d.registerWriteHandler("operations." + WriteCoalescer.COALESCED_WRITE, new CoalescedWriteHandler());
+    d.registerHandler("operations.consistency", new ConsistencyHandler());
+    d.registerHandler("operations.createfilter", new CreateFilterHandler(x.eventBus()));
+    d.registerHandler("operations.createprocessor", new CreateProcessorHandler(x.eventBus()));
+    d.registerHandler("operations.filtermode", new FilterModeHandler());
+    d.registerHandler("operations.createmultiprocess", new CreateMultiProcessHandler(x.eventBus()));
+    d.registerHandler("operations.createserviceprocess", new CreateServiceProcessHandler(x.eventBus()));
+    d.registerHandler("operations.resultmode", new ResultModeHandler());
   }
 
 }
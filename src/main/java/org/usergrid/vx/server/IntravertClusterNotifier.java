@@ -19,6 +19,7 @@ import org.apache.cassandra.service.IMigrationListener;
 import org.apache.cassandra.service.MigrationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.usergrid.vx.server.operations.TypeRegistry;
 import org.vertx.java.core.Vertx;
 
 /**
@@ -55,6 +56,7 @@ public class IntravertClusterNotifier implements IMigrationListener {
   @Override
   public void onDropKeyspace(String ksName) {
     logger.info("onDropKeyspace for ksName: {}", ksName);
+    TypeRegistry.instance.invalidate(ksName);
   }
 
   
@@ -68,12 +70,14 @@ public class IntravertClusterNotifier implements IMigrationListener {
   @Override
   public void onDropColumnFamily(String ksName, String cfName) {
     logger.info("onDropColumnFamily for ksName: {} and cf: {}", ksName, cfName);
-    
+    TypeRegistry.instance.invalidate(ksName, cfName);
   }
 
   @Override
   public void onUpdateColumnFamily(String ksName, String cfName) {
     logger.info("onUpdateColumnFamily for ks: {} and cf: {}", ksName, cfName);
-    
+    // persisted types may no longer match the new comparator or validators, the
+    // schema types are built again from the new metadata on the next read
+    TypeRegistry.instance.invalidate(ksName, cfName);
   }
 }
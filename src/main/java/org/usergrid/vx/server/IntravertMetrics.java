@@ -0,0 +1,164 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.json.JsonObject;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Metered;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.Sampling;
+import com.yammer.metrics.core.Summarizable;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.stats.Snapshot;
+
+/**
+ * The timers that show where the time of a request goes.
+ *
+ * Each type of operation has a timer for the time it waits between being
+ * dispatched and a handler picking it up (DispatchWait), for the time its
+ * handler runs (Execution), for the calls it makes to Cassandra (Storage)
+ * and for turning the rows read into results (Decode). Each transport has a
+ * timer for whole requests (Request), for parsing the payload (Parse) and for
+ * serializing the response (Serialize).
+ *
+ * They are kept in the default metrics registry, which Cassandra reports
+ * over JMX as well, so they show up next to its own MBeans under
+ * <code>org.usergrid.vx</code>. {@link #toJson()} is what the metrics route
+ * of the server answers with.
+ */
+public final class IntravertMetrics {
+
+  public static final String GROUP = "org.usergrid.vx";
+
+  private static final String OPERATIONS = "Operations";
+  private static final String REQUESTS = "Requests";
+
+  private static final ConcurrentMap<MetricName, Timer> timers = new ConcurrentHashMap<MetricName, Timer>();
+
+  private IntravertMetrics() {}
+
+  public static Timer dispatchWait(String type) {
+    return timer(OPERATIONS, "DispatchWait", type);
+  }
+
+  public static Timer execution(String type) {
+    return timer(OPERATIONS, "Execution", type);
+  }
+
+  public static Timer storage(String type) {
+    return timer(OPERATIONS, "Storage", type);
+  }
+
+  public static Timer decode(String type) {
+    return timer(OPERATIONS, "Decode", type);
+  }
+
+  public static Timer request(String transport) {
+    return timer(REQUESTS, "Request", transport);
+  }
+
+  public static Timer parse(String transport) {
+    return timer(REQUESTS, "Parse", transport);
+  }
+
+  public static Timer serialize(String transport) {
+    return timer(REQUESTS, "Serialize", transport);
+  }
+
+  /**
+   * @return the type of an operation as its metrics are scoped, or null when
+   *         the message is not an operation
+   */
+  public static String type(JsonObject operation) {
+    String type = operation.getString(Operations.TYPE);
+    return type == null ? null : type.toLowerCase();
+  }
+
+  private static Timer timer(String type, String name, String scope) {
+    MetricName metricName = new MetricName(GROUP, type, name, scope);
+    Timer timer = timers.get(metricName);
+    if (timer == null) {
+      timer = Metrics.newTimer(metricName, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+      Timer existing = timers.putIfAbsent(metricName, timer);
+      if (existing != null) {
+        timer = existing;
+      }
+    }
+    return timer;
+  }
+
+  /**
+   * @return every metric of the server, keyed by type, name and scope
+   */
+  public static JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    for (Map.Entry<MetricName, Metric> entry : Metrics.defaultRegistry().allMetrics().entrySet()) {
+      MetricName name = entry.getKey();
+      if (!name.getGroup().startsWith(GROUP)) {
+        continue;
+      }
+      JsonObject value = toJson(entry.getValue());
+      if (value != null) {
+        json.putObject(name.getType() + '.' + name.getName() + (name.hasScope() ? '.' + name.getScope() : ""), value);
+      }
+    }
+    return json;
+  }
+
+  private static JsonObject toJson(Metric metric) {
+    JsonObject json = new JsonObject();
+    if (metric instanceof Counter) {
+      return json.putNumber("count", ((Counter) metric).count());
+    }
+    if (metric instanceof Gauge) {
+      Object value = ((Gauge<?>) metric).value();
+      return json.putValue("value", value instanceof Number || value instanceof Boolean ? value : String.valueOf(value));
+    }
+    if (metric instanceof Metered) {
+      Metered metered = (Metered) metric;
+      json.putNumber("count", metered.count())
+              .putNumber("meanRate", metered.meanRate())
+              .putNumber("oneMinuteRate", metered.oneMinuteRate());
+    } else if (metric instanceof Histogram) {
+      json.putNumber("count", ((Histogram) metric).count());
+    } else {
+      return null;
+    }
+    if (metric instanceof Summarizable && metric instanceof Sampling) {
+      Summarizable summary = (Summarizable) metric;
+      Snapshot snapshot = ((Sampling) metric).getSnapshot();
+      json.putNumber("min", summary.min())
+              .putNumber("mean", summary.mean())
+              .putNumber("max", summary.max())
+              .putNumber("median", snapshot.getMedian())
+              .putNumber("p95", snapshot.get95thPercentile())
+              .putNumber("p99", snapshot.get99thPercentile())
+              .putNumber("p999", snapshot.get999thPercentile());
+    }
+    return json;
+  }
+}
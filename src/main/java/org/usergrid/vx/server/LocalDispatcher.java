@@ -0,0 +1,373 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.handler.http.OperationsRequestHandler;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Non-clustered dispatcher for the request and operation handlers that live
+ * inside this JVM.
+ *
+ * Sending a JsonObject over the vert.x event bus copies it (encode and parse)
+ * on every hop, even when both ends are in the same process. Handlers
+ * registered here are invoked with the JsonObject by reference instead, on
+ * the context of the sender, and their reply is delivered back the same way.
+ * Every handler is also registered on the event bus so that clustered or
+ * external senders keep working, and sends to addresses that are not known
+ * locally (processors, filters, handlers registered directly on the event
+ * bus) fall back to the event bus.
+ *
+ * Handlers that block on Cassandra are registered with
+ * {@link #registerReadHandler} or {@link #registerWriteHandler} and run on a
+ * worker pool, so several of them can be in flight for the same request
+ * without holding up the event loop. Reads and writes (schema changes
+ * included) get a pool each, so a replica that is slow to answer reads
+ * cannot take every worker away from the writes, or the other way around.
+ * The pool sizes are read from the <code>readThreads</code> and
+ * <code>writeThreads</code> system properties, both default to
+ * <code>operationThreads</code>. The operations in flight on them are
+ * counted by the {@link AdmissionController} of the dispatcher. An operation
+ * whose deadline has passed by the time a worker picks it up is answered
+ * with an exception instead of being run.
+ *
+ * The time operations wait to be run and the time their handlers take are
+ * recorded in {@link IntravertMetrics}, and sampled to the {@link DiagnosticLog}.
+ */
+public class LocalDispatcher {
+
+  private static final int DEFAULT_OPERATION_THREADS = 32;
+
+  private final Vertx vertx;
+  private final ConcurrentMap<String, Handler<Message<JsonObject>>> handlers =
+          new ConcurrentHashMap<String, Handler<Message<JsonObject>>>();
+  private final ConcurrentMap<String, ExecutorService> blocking = new ConcurrentHashMap<String, ExecutorService>();
+  private final ExecutorService readers;
+  private final ExecutorService writers;
+  private final AdmissionController admission;
+
+  public LocalDispatcher(Vertx vertx) {
+    this.vertx = vertx;
+    int threads = Integer.getInteger("operationThreads", DEFAULT_OPERATION_THREADS);
+    this.readers = Executors.newFixedThreadPool(Integer.getInteger("readThreads", threads),
+            new NamedThreadFactory("IntravertReads"));
+    this.writers = Executors.newFixedThreadPool(Integer.getInteger("writeThreads", threads),
+            new NamedThreadFactory("IntravertWrites"));
+    this.admission = new AdmissionController(vertx);
+  }
+
+  public AdmissionController admission() {
+    return admission;
+  }
+
+  public void registerHandler(String address, Handler<Message<JsonObject>> handler) {
+    handlers.put(address, handler);
+    vertx.eventBus().registerHandler(address, handler);
+  }
+
+  public void registerReadHandler(String address, Handler<Message<JsonObject>> handler) {
+    blocking.put(address, readers);
+    registerHandler(address, handler);
+  }
+
+  public void registerWriteHandler(String address, Handler<Message<JsonObject>> handler) {
+    blocking.put(address, writers);
+    registerHandler(address, handler);
+  }
+
+  /**
+   * Registers a handler that is only reachable through this dispatcher, for
+   * short lived addresses such as the result stream of one request.
+   */
+  public void registerLocalHandler(String address, Handler<Message<JsonObject>> handler) {
+    handlers.put(address, handler);
+  }
+
+  public void unregisterLocalHandler(String address) {
+    handlers.remove(address);
+  }
+
+  /**
+   * Sends to a handler registered with this dispatcher, does nothing when
+   * there is none.
+   */
+  public void sendLocal(String address, JsonObject body) {
+    if (handlers.containsKey(address)) {
+      send(address, body, null);
+    }
+  }
+
+  public void send(String address, JsonObject body, Handler<Message<JsonObject>> replyHandler) {
+    final Handler<Message<JsonObject>> handler = handlers.get(address);
+    if (handler == null) {
+      vertx.eventBus().send(address, body, replyHandler);
+      return;
+    }
+    final LocalMessage<JsonObject> message = new LocalMessage<JsonObject>(vertx.currentContext(), body, replyHandler);
+    final long sent = System.nanoTime();
+    ExecutorService pool = blocking.get(address);
+    if (pool != null) {
+      admission.storageOpStarted();
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (expired(message.body())) {
+              message.reply(new JsonObject()
+                      .putString(Operations.EXCEPTION_ID, String.valueOf(message.body().getNumber(Operations.ID)))
+                      .putString(Operations.EXCEPTION, OperationsRequestHandler.DEADLINE_EXCEEDED));
+              return;
+            }
+            timed(handler, message, sent);
+          } finally {
+            admission.storageOpFinished();
+          }
+        }
+      });
+    } else {
+      vertx.runOnContext(new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+          timed(handler, message, sent);
+        }
+      });
+    }
+  }
+
+  /* operations are timed from the send to the handler, and in the handler */
+  private static void timed(Handler<Message<JsonObject>> handler, Message<JsonObject> message, long sent) {
+    String type = IntravertMetrics.type(message.body());
+    if (type == null) {
+      handler.handle(message);
+      return;
+    }
+    long started = System.nanoTime();
+    IntravertMetrics.dispatchWait(type).update(started - sent, TimeUnit.NANOSECONDS);
+    try {
+      handler.handle(message);
+    } finally {
+      long elapsed = System.nanoTime() - started;
+      IntravertMetrics.execution(type).update(elapsed, TimeUnit.NANOSECONDS);
+      DiagnosticLog.executed(message.body(), elapsed);
+    }
+  }
+
+  private static boolean expired(JsonObject operation) {
+    Number deadline = operation.getNumber(Operations.DEADLINE);
+    return deadline != null && System.currentTimeMillis() >= deadline.longValue();
+  }
+
+  /**
+   * A message that is handed to a local handler by reference. A reply of any
+   * type is delivered the same way, on the context of the sender, and may
+   * itself be replied to when the reply asks for it.
+   */
+  static class LocalMessage<T> implements Message<T> {
+
+    private final Context context;
+    private final T body;
+    private final Handler<? extends Message<?>> replyHandler;
+
+    LocalMessage(Context context, T body, Handler<? extends Message<?>> replyHandler) {
+      this.context = context;
+      this.body = body;
+      this.replyHandler = replyHandler;
+    }
+
+    @Override
+    public T body() {
+      return body;
+    }
+
+    @Override
+    public String replyAddress() {
+      return null;
+    }
+
+    @Override
+    public void reply() {
+      deliver(null, null);
+    }
+
+    @Override
+    public void reply(Object message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public <R> void reply(Handler<Message<R>> replyReplyHandler) {
+      deliver(null, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Object message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public void reply(JsonObject message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public <R> void reply(JsonObject message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public void reply(JsonArray message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(String message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Buffer message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(byte[] message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Integer message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Long message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Short message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Character message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Boolean message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Float message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public void reply(Double message) {
+      deliver(message, null);
+    }
+
+    @Override
+    public <R> void reply(JsonArray message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(String message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Buffer message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(byte[] message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Integer message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Long message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Short message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Character message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Boolean message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Float message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @Override
+    public <R> void reply(Double message, Handler<Message<R>> replyReplyHandler) {
+      deliver(message, replyReplyHandler);
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void deliver(final Object message, final Handler<? extends Message<?>> replyReplyHandler) {
+      if (replyHandler == null) {
+        return;
+      }
+      Handler<Void> deliver = new Handler<Void>() {
+        @Override
+        public void handle(Void event) {
+          ((Handler) replyHandler).handle(new LocalMessage<Object>(context, message, replyReplyHandler));
+        }
+      };
+      if (context == null) {
+        deliver.handle(null);
+      } else {
+        context.runOnContext(deliver);
+      }
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package org.usergrid.vx.server.operations;
 
+import org.usergrid.vx.server.DiagnosticLog;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
@@ -16,7 +17,7 @@ public abstract class AbstractIntravertHandler implements Handler<Message<JsonOb
       String message = ex.getMessage() ==null ? "Exception "+id : ex.getMessage() ;
       event.reply(new JsonObject().putString("exceptionId", id+"")
               .putString("exception", message));
-      ex.printStackTrace();
+      DiagnosticLog.failed(event.body(), ex);
     }
   }
   
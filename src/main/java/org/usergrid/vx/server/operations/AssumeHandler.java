@@ -2,8 +2,11 @@ package org.usergrid.vx.server.operations;
 
 import java.nio.ByteBuffer;
 
+import org.apache.cassandra.db.marshal.AbstractCompositeType;
+import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.experimental.TypeHelper;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 
@@ -26,64 +29,58 @@ public class AssumeHandler extends AbstractIntravertHandler {
     Integer id = event.body().getInteger("id");
     JsonObject params = event.body().getObject("op");
     JsonObject state = event.body().getObject("state");
-    JsonObject meta = state.getObject("meta");
-    JsonObject metaColumn = state.getObject("metaColumn");
-    JsonObject metaRanged = state.getObject("metaRanged");
-    if (meta == null) {
-      meta = new JsonObject();
-    }
-    if (metaColumn == null){
-      metaColumn = new JsonObject();
-    }
-    if (metaRanged == null){
-      metaRanged = new JsonObject();
+    // parse the type once here, so a bad class fails the ASSUME and the reads
+    // that follow find it in the type cache
+    AbstractType<?> type = TypeHelper.getType(params.getString("clazz"));
+    boolean decompose = params.getBoolean(Operations.DECOMPOSE, false);
+    if (decompose && !(type instanceof AbstractCompositeType)) {
+      throw new IllegalArgumentException("Only a composite type can be decomposed, not " + params.getString("clazz"));
     }
+    String ks = HandlerUtils.instance.determineKs(params, state, null);
+    String cf = HandlerUtils.instance.determineCf(params, state, null);
+    StringBuilder key = new StringBuilder();
+    key.append(ks);
+    key.append(' ');
+    key.append(cf);
+    key.append(' ');
+    String section;
+    JsonObject value = metadata(params, decompose);
     if (params.getString("type") != null){
-      StringBuilder key = new StringBuilder();
-      key.append(HandlerUtils.instance.determineKs(params, state, null));
-      key.append(' ');
-      key.append(HandlerUtils.instance.determineCf(params, state, null));
-      key.append(' ');
       key.append(params.getString("type"));
-      meta.putObject(key.toString(), new JsonObject()
-        .putString("clazz", params.getString("clazz")));
-      state.putObject("meta", meta);
-      event.reply(new JsonObject().putString(id.toString(), "OK")
-        .putObject("state", state));
+      section = ColumnTypes.META;
     } else if (params.getField("name") != null){
       Object o = params.getField("name");
       ByteBuffer bb = HandlerUtils.instance.byteBufferForObject(o);
-      StringBuilder key = new StringBuilder();
-      key.append(HandlerUtils.instance.determineKs(params, state, null));
-      key.append(' ');
-      key.append(HandlerUtils.instance.determineCf(params, state, null));
-      key.append(' ');
       key.append(ByteBufferUtil.bytesToHex(bb));
-      metaColumn.putObject(key.toString(), new JsonObject()
-              .putString("clazz", params.getString("clazz")));
-      state.putObject("metaColumn", metaColumn);
-      event.reply(new JsonObject().putString(id.toString(), "OK")
-              .putObject("state", state));
+      section = ColumnTypes.META_COLUMN;
     } else if (params.getField(Operations.RANGE_START) !=null) {
       Object start = params.getField(Operations.RANGE_START);
       Object end = params.getField(Operations.RANGE_END);
       ByteBuffer sbuf = HandlerUtils.instance.byteBufferForObject(start);
       ByteBuffer ebuf = HandlerUtils.instance.byteBufferForObject(end);
-      StringBuilder key = new StringBuilder();
-      key.append(HandlerUtils.instance.determineKs(params, state, null));
-      key.append(' ');
-      key.append(HandlerUtils.instance.determineCf(params, state, null));
-      key.append(' ');
       key.append(ByteBufferUtil.bytesToHex(sbuf));
-      JsonObject value = new JsonObject();
-      value.putString("clazz", params.getString("clazz"));
       value.putString("end",ByteBufferUtil.bytesToHex(ebuf));
-      metaRanged.putObject(key.toString(), value);
-      state.putObject("metaRanged", metaRanged);
-      event.reply(new JsonObject().putString(id.toString(), "OK")
-              .putObject("state", state));
+      section = ColumnTypes.META_RANGED;
     } else {
       throw new RuntimeException("hit bottom this is bad ok");
     }
+
+    if (params.getBoolean(Operations.PERSIST, false)) {
+      TypeRegistry.instance.assume(ks, cf, section, key.toString(), value);
+      event.reply(new JsonObject().putString(id.toString(), "OK"));
+    } else {
+      // the delta only holds this entry, it is merged into the section of the request state
+      JsonObject entries = new JsonObject().putObject(key.toString(), value);
+      event.reply(new JsonObject().putString(id.toString(), "OK")
+              .putObject("state", new JsonObject().putObject(section, entries)));
+    }
+  }
+
+  private static JsonObject metadata(JsonObject params, boolean decompose) {
+    JsonObject metadata = new JsonObject().putString("clazz", params.getString("clazz"));
+    if (decompose) {
+      metadata.putBoolean(Operations.DECOMPOSE, true);
+    }
+    return metadata;
   }
 }
@@ -9,7 +9,7 @@ public class AutotimestampHandler extends AbstractIntravertHandler {
   public void handleUser(Message<JsonObject> event) {
     Integer id = event.body().getInteger("id");
     JsonObject params = event.body().getObject("op");
-    JsonObject state = event.body().getObject("state");
+    JsonObject state = new JsonObject();
     state.putBoolean("autotimestamp", params.getBoolean("autotimestamp"));
     event.reply(new JsonObject()
         .putString(id.toString(), "OK")
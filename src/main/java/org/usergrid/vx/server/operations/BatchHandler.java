@@ -6,6 +6,7 @@ import java.util.List;
 import org.apache.cassandra.db.IMutation;
 import org.apache.cassandra.db.RowMutation;
 import org.apache.cassandra.db.filter.QueryPath;
+import org.usergrid.vx.server.DiagnosticLog;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
@@ -15,16 +16,16 @@ public class BatchHandler extends AbstractIntravertHandler {
 
   @Override
   public void handleUser(Message<JsonObject> event) {
-    System.out.println("I gots da batch "+event.body());
     Integer id = event.body().getInteger("id");
     JsonObject params = event.body().getObject("op");
     JsonObject state = event.body().getObject("state");
     JsonArray array = params.getArray("rows");
+    DiagnosticLog.event(event.body(), "batch rows=" + array.size());
     List<IMutation> mutations = new ArrayList<IMutation>();
     for (int i =0;i<array.size();i++){
       JsonObject row = (JsonObject) array.get(i);
       RowMutation rm = new RowMutation(HandlerUtils.instance.determineKs(params, state, row),
-              HandlerUtils.instance.byteBufferForObject(row.getField("rowkey")));
+              HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(row.getField("rowkey"))));
       QueryPath qp = new QueryPath(HandlerUtils.instance.determineCf(params, state, row),
               null, HandlerUtils.instance.byteBufferForObject(row.getField("name")));
       Object val = row.getField("value");
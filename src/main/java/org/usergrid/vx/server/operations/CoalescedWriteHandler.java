@@ -0,0 +1,62 @@
+package org.usergrid.vx.server.operations;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.db.CounterMutation;
+import org.apache.cassandra.db.IMutation;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.handler.http.WriteCoalescer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Writes a run of adjacent SET and COUNTER operations, as grouped by
+ * {@link WriteCoalescer}, with a single StorageProxy.mutate call. Operations
+ * on the same keyspace and row key share one RowMutation (counters get their
+ * own, wrapped in a CounterMutation) and every operation is answered with its
+ * own "OK".
+ */
+public class CoalescedWriteHandler extends AbstractIntravertHandler {
+
+  @Override
+  public void handleUser(Message<JsonObject> event) {
+    JsonObject state = event.body().getObject(Operations.STATE);
+    JsonArray ops = event.body().getArray(WriteCoalescer.OPS);
+    Map<String, RowMutation> rows = new LinkedHashMap<String, RowMutation>();
+    Map<String, RowMutation> counters = new LinkedHashMap<String, RowMutation>();
+    List<Integer> ids = new ArrayList<Integer>(ops.size());
+    for (Object o : ops) {
+      JsonObject operation = (JsonObject) o;
+      JsonObject params = operation.getObject(Operations.OP);
+      boolean counter = "counter".equalsIgnoreCase(operation.getString(Operations.TYPE));
+      String ks = HandlerUtils.instance.determineKs(params, state, null);
+      ByteBuffer key = HandlerUtils.instance.rowKey(params);
+      Map<String, RowMutation> group = counter ? counters : rows;
+      String groupKey = ks + ' ' + ByteBufferUtil.bytesToHex(key);
+      RowMutation rm = group.get(groupKey);
+      if (rm == null) {
+        rm = new RowMutation(ks, key);
+        group.put(groupKey, rm);
+      }
+      if (counter) {
+        CounterHandler.addCounter(rm, params, state);
+      } else {
+        SetHandler.addColumn(rm, params, state);
+      }
+      ids.add(operation.getInteger(Operations.ID));
+    }
+    List<IMutation> mutations = new ArrayList<IMutation>(rows.size() + counters.size());
+    mutations.addAll(rows.values());
+    for (RowMutation rm : counters.values()) {
+      mutations.add(new CounterMutation(rm, HandlerUtils.instance.determineConsistencyLevel(state)));
+    }
+    HandlerUtils.instance.write(mutations, event, ids, state);
+  }
+}
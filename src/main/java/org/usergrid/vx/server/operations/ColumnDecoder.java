@@ -0,0 +1,170 @@
+package org.usergrid.vx.server.operations;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.CounterColumn;
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.db.marshal.AbstractCompositeType;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.operations.ColumnTypes.ColumnType;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * The ASSUME metadata and the components of a request, compiled for one
+ * column family. The state keys its metadata with strings built from the
+ * keyspace, the column family and the hex of a column name; looking those up
+ * for every column of a wide row costs more than reading the row. The decoder
+ * is built once per operation instead, from the {@link ColumnTypes} persisted
+ * in the {@link TypeRegistry} and the ASSUMEs of the request on top of them.
+ * When the request assumes nothing for the column family the registered
+ * types are used as they are. In schema typed mode the registered types are
+ * seeded from the schema of the column family.
+ *
+ * A composite type assumed with decompose is returned as an array holding
+ * each of its components typed by its own comparator.
+ *
+ * The components a read returns are a bitmask. COMPONENTSELECT stores it in
+ * the state next to the component names, so it is not searched for in the
+ * names array for every column.
+ *
+ * Untyped names and values are copied out into byte arrays, unless the state
+ * says the transport writes ByteBuffers itself. Then they are returned as
+ * slices of the buffers Cassandra read, so a large value is not copied
+ * before it reaches the response. Filters get byte arrays either way, since
+ * they are reached over the event bus.
+ */
+public class ColumnDecoder {
+
+  public static final int NAME = 1;
+  public static final int VALUE = 2;
+  public static final int TIMESTAMP = 4;
+  public static final int MARKED_DELETE = 8;
+
+  private final int components;
+  private final int fieldCapacity;
+  private final boolean buffers;
+  private final ColumnTypes types;
+
+  private ColumnDecoder(JsonObject state, String ks, String cf) {
+    Integer mask = state.getInteger(Operations.COMPONENT_MASK);
+    components = mask == null ? componentMask(state.getArray(Operations.COMPONENTS)) : mask;
+    // sized so that the map of a column never rehashes
+    fieldCapacity = Integer.bitCount(components) * 4 / 3 + 1;
+    buffers = state.getBoolean(Operations.BUFFERS, false) && state.getString("currentFilter") == null;
+
+    String prefix = ks + ' ' + cf + ' ';
+    ColumnTypes registered = state.getBoolean(Operations.SCHEMA_TYPES, false)
+            ? TypeRegistry.instance.getSchemaTyped(ks, cf)
+            : TypeRegistry.instance.get(ks, cf);
+    if (ColumnTypes.defines(state, prefix)) {
+      types = registered.copy().load(state, prefix);
+    } else {
+      types = registered;
+    }
+  }
+
+  /**
+   * @return the bits of the named components, unknown names are ignored
+   */
+  public static int componentMask(JsonArray names) {
+    int mask = 0;
+    if (names != null) {
+      for (Object name : names) {
+        if (Operations.NAME.equals(name)) {
+          mask |= NAME;
+        } else if (Operations.VALUE.equals(name)) {
+          mask |= VALUE;
+        } else if (Operations.TIMESTAMP.equals(name)) {
+          mask |= TIMESTAMP;
+        } else if (Operations.MARKEDDELETE.equals(name)) {
+          mask |= MARKED_DELETE;
+        }
+      }
+    }
+    return mask;
+  }
+
+  public static ColumnDecoder compile(JsonObject state, String ks, String cf) {
+    return new ColumnDecoder(state, ks, cf);
+  }
+
+  public static ColumnDecoder compile(JsonObject state, ColumnFamily cf) {
+    return new ColumnDecoder(state, cf.metadata().ksName, cf.metadata().cfName);
+  }
+
+  /* reversed lists the columns from the last one to the first, the order a reversed slice reads them */
+  public JsonArray read(ColumnFamily columnFamily, boolean reversed) {
+    // the maps are added to the array directly, without a JsonObject around each
+    List<Object> columns = new ArrayList<Object>(columnFamily.getColumnCount());
+    Iterator<IColumn> it = reversed ? columnFamily.getReverseSortedColumns().iterator() : columnFamily.iterator();
+    while (it.hasNext()) {
+      IColumn column = it.next();
+      if (column.isLive()) {
+        columns.add(write(column));
+      }
+    }
+    return new JsonArray(columns);
+  }
+
+  private Map<String, Object> write(IColumn column) {
+    Map<String, Object> m = new HashMap<String, Object>(fieldCapacity);
+    if ((components & NAME) != 0) {
+      m.put(Operations.NAME, decode(types.nameType(), column.name()));
+    }
+    if ((components & VALUE) != 0) {
+      if (column instanceof CounterColumn) {
+        m.put(Operations.VALUE, ((CounterColumn) column).total());
+      } else {
+        m.put(Operations.VALUE, decode(types.valueType(column.name()), column.value()));
+      }
+    }
+    if ((components & TIMESTAMP) != 0) {
+      m.put(Operations.TIMESTAMP, column.timestamp());
+    }
+    if ((components & MARKED_DELETE) != 0) {
+      m.put(Operations.MARKEDDELETE, column.getMarkedForDeleteAt());
+    }
+    return m;
+  }
+
+  /**
+   * @return the row key typed by the assumed row key type, or its bytes
+   */
+  public Object rowKey(ByteBuffer key) {
+    return decode(types.rowKeyType(), key);
+  }
+
+  private Object decode(ColumnType type, ByteBuffer bytes) {
+    if (type == null) {
+      return raw(bytes);
+    }
+    if (type.decompose) {
+      List<AbstractCompositeType.CompositeComponent> components =
+              ((AbstractCompositeType) type.type).deconstruct(bytes.duplicate());
+      List<Object> decoded = new ArrayList<Object>(components.size());
+      for (AbstractCompositeType.CompositeComponent component : components) {
+        decoded.add(decode(component.comparator, component.value));
+      }
+      return decoded;
+    }
+    return decode(type.type, bytes);
+  }
+
+  private Object decode(AbstractType<?> type, ByteBuffer bytes) {
+    Object typed = type.compose(bytes.duplicate());
+    return typed instanceof ByteBuffer ? raw(bytes) : typed;
+  }
+
+  private Object raw(ByteBuffer bytes) {
+    return buffers ? bytes.duplicate() : ByteBufferUtil.getArray(bytes);
+  }
+}
@@ -0,0 +1,215 @@
+package org.usergrid.vx.server.operations;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.db.marshal.AbstractCompositeType;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.experimental.TypeHelper;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * The types assumed for one column family: the row key, column name and
+ * default value types, the value types of single columns keyed by the name
+ * bytes, and ranged value types sorted by their start so that the range
+ * holding a name is found by binary search.
+ *
+ * Types are loaded from objects laid out like the request state, the meta,
+ * metaColumn and metaRanged entries keyed by "keyspace columnfamily suffix".
+ * An instance is not changed once it is shared, a copy is loaded instead.
+ *
+ * Types can also be seeded from the schema of the column family: the key
+ * validator, the comparator, the validators of its column_metadata and its
+ * default validator. Assumed types replace them, and the default validator
+ * is only used for values no assumed type covers, ranges included.
+ */
+public class ColumnTypes {
+
+  public static final String META = "meta";
+  public static final String META_COLUMN = "metaColumn";
+  public static final String META_RANGED = "metaRanged";
+
+  private static final Comparator<ByteBuffer> UNSIGNED = new Comparator<ByteBuffer>() {
+    @Override
+    public int compare(ByteBuffer o1, ByteBuffer o2) {
+      return ByteBufferUtil.compareUnsigned(o1, o2);
+    }
+  };
+
+  private ColumnType rowKeyType;
+  private ColumnType nameType;
+  private ColumnType valueType;
+  private ColumnType schemaValueType;
+  private final Map<ByteBuffer, ColumnType> columnTypes;
+  private final TreeMap<ByteBuffer, Range> rangedTypes;
+
+  public ColumnTypes() {
+    columnTypes = new HashMap<ByteBuffer, ColumnType>();
+    rangedTypes = new TreeMap<ByteBuffer, Range>(UNSIGNED);
+  }
+
+  private ColumnTypes(ColumnTypes other) {
+    rowKeyType = other.rowKeyType;
+    nameType = other.nameType;
+    valueType = other.valueType;
+    schemaValueType = other.schemaValueType;
+    columnTypes = new HashMap<ByteBuffer, ColumnType>(other.columnTypes);
+    rangedTypes = new TreeMap<ByteBuffer, Range>(other.rangedTypes);
+  }
+
+  public ColumnTypes copy() {
+    return new ColumnTypes(this);
+  }
+
+  /**
+   * @return true when the object holds types for the column family, they
+   *         replace the types of the same column, range or kind loaded before
+   */
+  public static boolean defines(JsonObject source, String prefix) {
+    return source.getObject(META) != null && hasPrefix(source.getObject(META), prefix)
+            || source.getObject(META_COLUMN) != null && hasPrefix(source.getObject(META_COLUMN), prefix)
+            || source.getObject(META_RANGED) != null && hasPrefix(source.getObject(META_RANGED), prefix);
+  }
+
+  private static boolean hasPrefix(JsonObject entries, String prefix) {
+    for (String key : entries.getFieldNames()) {
+      if (key.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Loads the types of the column family whose keys start with prefix.
+   */
+  public ColumnTypes load(JsonObject source, String prefix) {
+    JsonObject meta = source.getObject(META);
+    if (meta != null) {
+      rowKeyType = override(rowKeyType, meta.getObject(prefix + "rowkey"));
+      nameType = override(nameType, meta.getObject(prefix + "column"));
+      valueType = override(valueType, meta.getObject(prefix + "value"));
+    }
+    JsonObject metaColumn = source.getObject(META_COLUMN);
+    if (metaColumn != null) {
+      for (String key : metaColumn.getFieldNames()) {
+        if (key.startsWith(prefix)) {
+          columnTypes.put(ByteBufferUtil.hexToBytes(key.substring(prefix.length())),
+                  type(metaColumn.getObject(key)));
+        }
+      }
+    }
+    JsonObject metaRanged = source.getObject(META_RANGED);
+    if (metaRanged != null) {
+      for (String key : metaRanged.getFieldNames()) {
+        if (key.startsWith(prefix)) {
+          JsonObject range = metaRanged.getObject(key);
+          rangedTypes.put(ByteBufferUtil.hexToBytes(key.substring(prefix.length())),
+                  new Range(ByteBufferUtil.hexToBytes(range.getString("end")), type(range)));
+        }
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Seeds the types declared by the schema. BytesType is skipped, it decodes
+   * to the raw bytes anyway and would hide the ranges assumed later.
+   */
+  public ColumnTypes seed(CFMetaData metadata) {
+    rowKeyType = schema(metadata.getKeyValidator());
+    nameType = schema(metadata.comparator);
+    schemaValueType = schema(metadata.getDefaultValidator());
+    for (ColumnDefinition column : metadata.getColumn_metadata().values()) {
+      ColumnType type = schema(column.getValidator());
+      if (type != null) {
+        columnTypes.put(column.name, type);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Loads the types set in other over the ones held here.
+   */
+  public ColumnTypes overlay(ColumnTypes other) {
+    rowKeyType = other.rowKeyType == null ? rowKeyType : other.rowKeyType;
+    nameType = other.nameType == null ? nameType : other.nameType;
+    valueType = other.valueType == null ? valueType : other.valueType;
+    schemaValueType = other.schemaValueType == null ? schemaValueType : other.schemaValueType;
+    columnTypes.putAll(other.columnTypes);
+    rangedTypes.putAll(other.rangedTypes);
+    return this;
+  }
+
+  ColumnType rowKeyType() {
+    return rowKeyType;
+  }
+
+  ColumnType nameType() {
+    return nameType;
+  }
+
+  /**
+   * A value is typed by its column type first, then by the default value type
+   * of the column family, then by the range holding its name, then by the
+   * default validator of the schema. Ranges include their start and exclude
+   * their end, and are not expected to overlap.
+   */
+  ColumnType valueType(ByteBuffer name) {
+    ColumnType type = columnTypes.get(name);
+    if (type != null) {
+      return type;
+    }
+    if (valueType != null) {
+      return valueType;
+    }
+    Map.Entry<ByteBuffer, Range> floor = rangedTypes.floorEntry(name);
+    if (floor != null && UNSIGNED.compare(name, floor.getValue().end) < 0) {
+      return floor.getValue().type;
+    }
+    return schemaValueType;
+  }
+
+  private static ColumnType override(ColumnType current, JsonObject metadata) {
+    return metadata == null ? current : type(metadata);
+  }
+
+  private static ColumnType schema(AbstractType<?> type) {
+    return type == null || type instanceof BytesType ? null : new ColumnType(type, false);
+  }
+
+  private static ColumnType type(JsonObject metadata) {
+    AbstractType<?> type = TypeHelper.getType(metadata.getString("clazz"));
+    return new ColumnType(type,
+            metadata.getBoolean(Operations.DECOMPOSE, false) && type instanceof AbstractCompositeType);
+  }
+
+  static class ColumnType {
+    final AbstractType<?> type;
+    final boolean decompose;
+
+    ColumnType(AbstractType<?> type, boolean decompose) {
+      this.type = type;
+      this.decompose = decompose;
+    }
+  }
+
+  private static class Range {
+    private final ByteBuffer end;
+    private final ColumnType type;
+
+    Range(ByteBuffer end, ColumnType type) {
+      this.end = end;
+      this.type = type;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package org.usergrid.vx.server.operations;
 
+import org.usergrid.vx.experimental.Operations;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
@@ -15,8 +16,9 @@ public class ComponentSelectHandler implements Handler<Message<JsonObject>>{
   public void handle(Message<JsonObject> event) {
     Integer id = event.body().getInteger("id");
     JsonObject params = event.body().getObject("op");
-    JsonObject state = event.body().getObject("state");
+    JsonObject state = new JsonObject();
     state.putArray("components", params.getArray("components"));
+    state.putNumber(Operations.COMPONENT_MASK, ColumnDecoder.componentMask(params.getArray("components")));
     event.reply(new JsonObject()
         .putString(id.toString(), "OK")
         .putObject("state", state)
@@ -12,7 +12,7 @@ public class ConsistencyHandler extends AbstractIntravertHandler {
 	public void handleUser(Message<JsonObject> event) {
 		Integer id = event.body().getInteger("id");
 		JsonObject params = event.body().getObject(Operations.OP);
-		JsonObject state = event.body().getObject(Operations.STATE);
+		JsonObject state = new JsonObject();
 		HandlerUtils.instance.setConsistencyLevel(state, params.getString("level"));	
 		event.reply(new JsonObject().putString(id.toString(), "OK").putObject(
 				Operations.STATE, state));
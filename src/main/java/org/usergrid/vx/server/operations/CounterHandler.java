@@ -23,15 +23,22 @@ public class CounterHandler extends AbstractIntravertHandler {
     JsonObject params = event.body().getObject("op");
     JsonObject state = event.body().getObject("state");
     RowMutation rm = new RowMutation(HandlerUtils.instance.determineKs(params, state, null),
-            HandlerUtils.instance.byteBufferForObject(params.getString("rowkey")));
+            HandlerUtils.instance.rowKey(params));
+    addCounter(rm, params, state);
+    List<IMutation> mutations = new ArrayList<IMutation>(1);
+    mutations.add(new CounterMutation(rm, HandlerUtils.instance.determineConsistencyLevel(state)));
+    HandlerUtils.instance.write(mutations, event, id, state);
+  }
+
+  /**
+   * Adds the increment of a COUNTER operation to a mutation of its row.
+   */
+  static void addCounter(RowMutation rm, JsonObject params, JsonObject state) {
     rm.addCounter(new QueryPath(
             HandlerUtils.instance.determineCf(params, state, null ),
             null,
             HandlerUtils.instance.byteBufferForObject(params.getString("name"))),
-            Long.parseLong(params.toMap().get("value").toString()));
-    List<IMutation> mutations = new ArrayList<IMutation>(1);
-    mutations.add(new CounterMutation(rm, HandlerUtils.instance.determineConsistencyLevel(state)));
-    HandlerUtils.instance.write(mutations, event, id, state);
+            Long.parseLong(params.getField("value").toString()));
   }
 }
 
@@ -11,11 +11,14 @@ import org.apache.cassandra.thrift.CqlResult;
 import org.apache.cassandra.thrift.CqlRow;
 import org.apache.cassandra.transport.messages.ResultMessage;
 import org.usergrid.vx.experimental.TypeHelper;
+import org.usergrid.vx.server.IntravertMetrics;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
+import com.yammer.metrics.core.TimerContext;
+
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -39,6 +42,7 @@ public class CqlQueryHandler implements Handler<Message<JsonObject>> {
     }
     QueryState queryState = new QueryState(clientState);
     ResultMessage rm = null;
+    TimerContext storage = IntravertMetrics.storage(IntravertMetrics.type(event.body())).time();
     try {
       rm = QueryProcessor.process(params.getString("query"), HandlerUtils.instance.determineConsistencyLevel(state), queryState);
     } catch (RequestExecutionException | RequestValidationException e) {
@@ -47,6 +51,8 @@ public class CqlQueryHandler implements Handler<Message<JsonObject>> {
           .putString("exceptionId", id.toString())
           .putString("exception", e.getMessage()));
       return;
+    } finally {
+      storage.stop();
     }
     List<Map<String,Object>> returnRows = new ArrayList<>();
     if (rm.kind == ResultMessage.Kind.ROWS) {
@@ -2,7 +2,6 @@ package org.usergrid.vx.server.operations;
 
 import org.usergrid.vx.experimental.filter.FactoryProvider;
 import org.usergrid.vx.experimental.filter.Filter;
-import org.usergrid.vx.experimental.filter.FilterFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
@@ -10,6 +9,13 @@ import org.vertx.java.core.json.JsonObject;
 
 public class CreateFilterHandler implements Handler<Message<JsonObject>> {
 
+  private static final ScriptRegistry.Compiler<Filter> COMPILER = new ScriptRegistry.Compiler<Filter>() {
+    @Override
+    public Filter compile(String spec, String source) {
+      return new FactoryProvider().getFilterFactory(spec).createFilter(source);
+    }
+  };
+
   private EventBus eb;
 
   public CreateFilterHandler(EventBus eb) {
@@ -25,12 +31,10 @@ public class CreateFilterHandler implements Handler<Message<JsonObject>> {
     String lang = params.getString("spec");
     String scriptSource = params.getString("value");
 
-    FactoryProvider factoryProvider = new FactoryProvider();
     try {
-      FilterFactory filterFactory = factoryProvider.getFilterFactory(lang);
-      Filter filter = filterFactory.createFilter(scriptSource);
-      eb.registerHandler("filters." + name, new FilterHandler(filter));
-      HandlerUtils.instance.putFilter(name, filterFactory.createFilter(scriptSource));
+      if (ScriptRegistry.filters.create(name, lang, scriptSource, COMPILER)) {
+        eb.registerHandler("filters." + name, new FilterHandler(name));
+      }
 
       event.reply(new JsonObject().putString(id.toString(), "OK"));
     } catch (IllegalArgumentException e) {
@@ -3,7 +3,6 @@ package org.usergrid.vx.server.operations;
 
 import org.usergrid.vx.experimental.multiprocessor.FactoryProvider;
 import org.usergrid.vx.experimental.multiprocessor.MultiProcessor;
-import org.usergrid.vx.experimental.multiprocessor.MultiProcessorFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
@@ -11,6 +10,13 @@ import org.vertx.java.core.json.JsonObject;
 
 public class CreateMultiProcessHandler implements Handler<Message<JsonObject>>{
   
+  private static final ScriptRegistry.Compiler<MultiProcessor> COMPILER = new ScriptRegistry.Compiler<MultiProcessor>() {
+    @Override
+    public MultiProcessor compile(String spec, String source) {
+      return new FactoryProvider().getFilterFactory(spec).createMultiProcessor(source);
+    }
+  };
+
   private EventBus eb;
 
   public CreateMultiProcessHandler(EventBus eb) {
@@ -25,11 +31,10 @@ public class CreateMultiProcessHandler implements Handler<Message<JsonObject>>{
     String lang = params.getString("spec");
     String scriptSource = params.getString("value");
 
-    FactoryProvider factoryProvider = new FactoryProvider();
     try {
-      MultiProcessorFactory processorFactory = factoryProvider.getFilterFactory(lang);
-      MultiProcessor processor = processorFactory.createMultiProcessor(scriptSource);
-      eb.registerHandler("multiprocessors." + name, new MultiProcessorHandler(processor));
+      if (ScriptRegistry.multiProcessors.create(name, lang, scriptSource, COMPILER)) {
+        eb.registerHandler("multiprocessors." + name, new MultiProcessorHandler(name));
+      }
       event.reply(new JsonObject().putString(id.toString(), "OK"));
     } catch (IllegalArgumentException e) {
       event.reply(new JsonObject()
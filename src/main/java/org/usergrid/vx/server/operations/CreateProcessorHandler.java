@@ -1,11 +1,7 @@
 package org.usergrid.vx.server.operations;
 
-import groovy.lang.GroovyClassLoader;
-
-import org.usergrid.vx.experimental.IntraOp;
 import org.usergrid.vx.experimental.processor.FactoryProvider;
 import org.usergrid.vx.experimental.processor.Processor;
-import org.usergrid.vx.experimental.processor.ProcessorFactory;
 
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
@@ -20,6 +16,13 @@ import org.vertx.java.core.json.JsonObject;
  */
 public class CreateProcessorHandler implements Handler<Message<JsonObject>>{
   
+  private static final ScriptRegistry.Compiler<Processor> COMPILER = new ScriptRegistry.Compiler<Processor>() {
+    @Override
+    public Processor compile(String spec, String source) {
+      return new FactoryProvider().getFilterFactory(spec).createProcessor(source);
+    }
+  };
+
   private EventBus eb;
 
   public CreateProcessorHandler(EventBus eb) {
@@ -34,11 +37,10 @@ public class CreateProcessorHandler implements Handler<Message<JsonObject>>{
     String lang = params.getString("spec");
     String scriptSource = params.getString("value");
 
-    FactoryProvider factoryProvider = new FactoryProvider();
     try {
-      ProcessorFactory processorFactory = factoryProvider.getFilterFactory(lang);
-      Processor processor = processorFactory.createProcessor(scriptSource);
-      eb.registerHandler("processors." + name, new ProcessorHandler(processor));
+      if (ScriptRegistry.processors.create(name, lang, scriptSource, COMPILER)) {
+        eb.registerHandler("processors." + name, new ProcessorHandler(name));
+      }
       event.reply(new JsonObject().putString(id.toString(), "OK"));
     } catch (IllegalArgumentException e) {
       event.reply(new JsonObject()
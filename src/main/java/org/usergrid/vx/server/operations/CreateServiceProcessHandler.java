@@ -11,6 +11,20 @@ import org.vertx.java.core.json.JsonObject;
 
 public class CreateServiceProcessHandler implements Handler<Message<JsonObject>>{
 
+  /* service processors are always groovy classes, the spec is not read */
+  private static final ScriptRegistry.Compiler<ServiceProcessor> COMPILER = new ScriptRegistry.Compiler<ServiceProcessor>() {
+    @Override
+    public ServiceProcessor compile(String spec, String source) {
+      GroovyClassLoader gc = new GroovyClassLoader(CreateServiceProcessHandler.class.getClassLoader());
+      Class<?> c = gc.parseClass(source);
+      try {
+        return (ServiceProcessor) c.newInstance();
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+  };
+
   private EventBus eb;
   
   public CreateServiceProcessHandler(EventBus eb){
@@ -24,21 +38,19 @@ public class CreateServiceProcessHandler implements Handler<Message<JsonObject>>
     String name = params.getString("name");
     String lang = params.getString("spec");
     String scriptSource = params.getString("value");
-    JsonObject state = event.body().getObject("state");
-     
-    GroovyClassLoader gc = new GroovyClassLoader(this.getClass().getClassLoader());
-    Class c = gc.parseClass( scriptSource );
-    ServiceProcessor sp = null;
+    String address = name.toLowerCase();
     try {
-      sp = (ServiceProcessor) c.newInstance();
-      eb.registerHandler("sps." + name.toLowerCase(), new ServiceProcessorHandler(sp,eb));
-    } catch (InstantiationException | IllegalAccessException e) {
+      if (ScriptRegistry.serviceProcessors.create(address, lang, scriptSource, COMPILER)) {
+        eb.registerHandler("sps." + address, new ServiceProcessorHandler(address, eb));
+      }
+    } catch (IllegalArgumentException e) {
       event.reply(new JsonObject()
       .putString(id.toString(), e.getClass().getName())
       .putString("exception", e.getMessage())
       .putString("exceptionId", id.toString()));
+      return;
     }
-    event.reply(new JsonObject().putString(id.toString(), "OK").putObject("state", state));
+    event.reply(new JsonObject().putString(id.toString(), "OK"));
   }
 }
 
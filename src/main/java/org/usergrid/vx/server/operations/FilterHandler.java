@@ -11,14 +11,15 @@ import java.util.Map;
 
 public class FilterHandler implements Handler<Message<JsonArray>> {
 
-  private Filter filter;
+  private final String name;
 
-  public FilterHandler(Filter filter) {
-    this.filter = filter;
+  public FilterHandler(String name) {
+    this.name = name;
   }
 
   @Override
   public void handle(Message<JsonArray> event) {
+    Filter filter = ScriptRegistry.filters.get(name);
     JsonArray filteredArray = new JsonArray();
     Context context = Context.enter();
     for (Object obj : event.body()) {
@@ -10,7 +10,7 @@ public class FilterModeHandler extends AbstractIntravertHandler {
   public void handleUser(Message<JsonObject> event) {
     Integer id = event.body().getInteger("id");
     JsonObject params = event.body().getObject("op");
-    JsonObject state = event.body().getObject("state");
+    JsonObject state = new JsonObject();
 
     String filterName = params.getString("name");
     Boolean enabled = params.getBoolean("on");
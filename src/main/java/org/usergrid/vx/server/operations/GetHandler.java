@@ -5,7 +5,6 @@ import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.exceptions.IsBootstrappingException;
 import org.apache.cassandra.exceptions.ReadTimeoutException;
 import org.apache.cassandra.exceptions.UnavailableException;
-import org.apache.cassandra.service.StorageProxy;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
@@ -43,7 +42,7 @@ public class GetHandler implements Handler<Message<JsonObject>> {
     List<Row> rows = null;
  
     try {
-      rows = StorageProxy.read(Arrays.asList(command), HandlerUtils.instance.determineConsistencyLevel(state));
+      rows = HandlerUtils.instance.read(event, Arrays.asList(command), HandlerUtils.instance.determineConsistencyLevel(state));
       ColumnFamily cf = rows.get(0).cf;
       new ReadHandler(event, eb).handleRead(cf);
     } catch (ReadTimeoutException | UnavailableException | IsBootstrappingException | IOException e) {
@@ -2,7 +2,9 @@ package org.usergrid.vx.server.operations;
 
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.exceptions.IsBootstrappingException;
 import org.apache.cassandra.exceptions.OverloadedException;
+import org.apache.cassandra.exceptions.ReadTimeoutException;
 import org.apache.cassandra.exceptions.UnavailableException;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.service.StorageProxy;
@@ -12,16 +14,19 @@ import org.usergrid.vx.experimental.IntraOp;
 import org.usergrid.vx.experimental.Operations;
 import org.usergrid.vx.experimental.TypeHelper;
 import org.usergrid.vx.experimental.filter.Filter;
+import org.usergrid.vx.server.IntravertMetrics;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.json.impl.Base64;
 
+import com.yammer.metrics.core.TimerContext;
+
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,7 +38,6 @@ public class HandlerUtils {
 
   // todo will this be reloadable?
   public static HandlerUtils instance;
-  public static Map<String,Filter> filters = new HashMap<String,Filter>();
   
   private static final String resultMode = "resultMode";
   private static final String consistency = "consitency";
@@ -46,35 +50,32 @@ public class HandlerUtils {
   }
 
   public Filter getFilter(String name){
-    return filters.get(name);
-  }
-  
-  public void putFilter(String name, Filter f){
-    filters.put(name, f);
+    return ScriptRegistry.filters.get(name);
   }
   
-  public void activateFilter(JsonObject state, String filterName){
-    state.putString("currentFilter", filterName);
+  /* the activate and deactivate methods set their fields in the state delta of an operation */
+  public void activateFilter(JsonObject delta, String filterName){
+    delta.putString("currentFilter", filterName);
   }
   
   public JsonObject getResultMode(JsonObject state){
     return state.getObject(resultMode);
   }
-  public void deactivateFilter(JsonObject state){
-    state.removeField("currentFilter");
+  public void deactivateFilter(JsonObject delta){
+    delta.putString("currentFilter", null);
   }
   
-  public void activateResultMode(JsonObject state, String keyspace, String columnFamily) {
-    state.putObject(resultMode, new JsonObject().putString(Operations.KEYSPACE, keyspace)
+  public void activateResultMode(JsonObject delta, String keyspace, String columnFamily) {
+    delta.putObject(resultMode, new JsonObject().putString(Operations.KEYSPACE, keyspace)
             .putString(Operations.COLUMN_FAMILY, columnFamily));
   }
   
-  public void deactivateResultMode(JsonObject state){
-    state.removeField(resultMode);
+  public void deactivateResultMode(JsonObject delta){
+    delta.putObject(resultMode, null);
   }
   
-  public void setConsistencyLevel(JsonObject state, String level){
-    state.putString(consistency, level );
+  public void setConsistencyLevel(JsonObject delta, String level){
+    delta.putString(consistency, level );
   }
   
   public ConsistencyLevel getConsistencyLevel(JsonObject state){
@@ -91,6 +92,7 @@ public class HandlerUtils {
    */
   public void resolveRefs(JsonObject operation, JsonObject results) {
     JsonObject params = operation.getObject(Operations.OP);
+    JsonObject resolved = null;
     Set<String> names = params.getFieldNames();
     for (String name : names) {
       Object o = params.getField(name);
@@ -102,15 +104,29 @@ public class HandlerUtils {
           Object k = results.getArray(refId + "").get(0);
           JsonObject m = (JsonObject) k;
           Object theDamnThing = m.getField(wanted);
+          // the parameters are shared with the parsed request, so resolve into a copy
+          if (resolved == null) {
+            resolved = params.copy();
+          }
           if (theDamnThing instanceof String) {
-            params.putString(name, (String) theDamnThing);
+            resolved.putString(name, (String) theDamnThing);
           }
           if (theDamnThing instanceof Number) {
-            params.putNumber(name, (Number) theDamnThing);
+            resolved.putNumber(name, (Number) theDamnThing);
+          }
+          // results are no longer copied over the event bus, keep the base64 form it used to produce
+          if (theDamnThing instanceof byte[]) {
+            resolved.putString(name, Base64.encodeBytes((byte[]) theDamnThing));
+          }
+          if (theDamnThing instanceof ByteBuffer) {
+            resolved.putString(name, Base64.encodeBytes(ByteBufferUtil.getArray((ByteBuffer) theDamnThing)));
           }
         }
       }
     }
+    if (resolved != null) {
+      operation.putObject(Operations.OP, resolved);
+    }
   }
 
   /* determine the consistency level from the state */
@@ -169,145 +185,63 @@ public class HandlerUtils {
   public JsonArray readCf(ColumnFamily columnFamily, JsonObject state) {
     return internalCfRead(columnFamily, state);
   }
-  
-
-  public JsonObject findMetaData(ColumnFamily cf, JsonObject state, String type) {
-    JsonObject meta = state.getObject("meta");
-    if (meta == null) {
-      return null;
-    } else {
-      StringBuilder key = new StringBuilder();
-      key.append(cf.metadata().ksName);
-      key.append(' ');
-      key.append(cf.metadata().cfName);
-      key.append(' ');
-      key.append(type);
-      return meta.getObject(key.toString());
-    }
-  }
 
-  public JsonObject findRangedMetaData(ColumnFamily cf, JsonObject state, ByteBuffer name) {
-    StringBuilder key = new StringBuilder();
-    key.append(cf.metadata().ksName);
-    key.append(' ');
-    key.append(cf.metadata().cfName);
-    key.append(' ');
-    key.append(ByteBufferUtil.bytesToHex(name));
-    String skey = key.toString();
-    JsonObject meta = state.getObject("metaRanged");
-    if (meta == null) {
-      return null;
-      // TODO why is this.
-    }
-    Set<String> names = meta.getFieldNames();
-    for (String s : names) {
-      // System.out.println("compare "+skey+ " to "+s);
-      if (skey.compareTo(s) > -1) {
-        // System.out.println(skey+ " greater then "+s);
-        JsonObject value = meta.getObject(s);
-        String end = cf.metadata().ksName + ' ' + cf.metadata().cfName + ' '
-                + value.getString("end");
-        // System.out.println("compare "+skey+ " to "+end);
-        if (skey.compareToIgnoreCase(end) < 0) {
-          // System.out.println("matched!");
-          return value;
-        }
-      }
-    }
-    // System.out.println();
-    return null;
-  }
-
-  public JsonObject findColumnMetaData(ColumnFamily cf, JsonObject state, ByteBuffer name) {
-    StringBuilder key = new StringBuilder();
-    key.append(cf.metadata().ksName);
-    key.append(' ');
-    key.append(cf.metadata().cfName);
-    key.append(' ');
-    key.append(ByteBufferUtil.bytesToHex(name));
-    JsonObject meta = state.getObject("metaColumn");
-    if (meta != null) {
-      return meta.getObject(key.toString());
-    } else {
-      return null;
-    }
+  public JsonArray internalCfRead(ColumnFamily columnFamily, JsonObject state){
+    return internalCfRead(columnFamily, state, false);
   }
 
-  public JsonArray internalCfRead(ColumnFamily columnFamily, JsonObject state){
-    JsonArray components = state.getArray("components");
-    JsonArray array = new JsonArray();
-    Iterator<IColumn> it = columnFamily.iterator();
-    while (it.hasNext()) {
-      IColumn column = it.next();
-      if (column.isLive()) {
-        HashMap<String,Object> m = new HashMap<>(4);
-        if (components.contains("name")) {
-          JsonObject columnMetadata = findMetaData(columnFamily, state, "column");
-          if (columnMetadata == null) {
-            m.put("name", ByteBufferUtil.getArray(column.name()));
-          } else {
-            String clazz = columnMetadata.getString("clazz");
-            m.put("name", TypeHelper.getTyped(clazz, column.name()));
-            Object name = TypeHelper.getTyped(clazz, column.name());
-            if (name instanceof ByteBuffer) {
-              m.put("name", TypeHelper.getBytes(column.name()));
-            } else {
-              m.put("name", TypeHelper.getTyped(clazz, column.name()));
-            }
-          }
-        }
-        if (components.contains("value")) {
-          if (column instanceof CounterColumn) {
-            m.put("value", ((CounterColumn) column).total());
-          } else {
-            JsonObject valueMetaData = findColumnMetaData(columnFamily, state, column.name()
-                    .duplicate());
-            if (valueMetaData == null) {
-              valueMetaData = findMetaData(columnFamily, state, "value");
-            }
-            if (valueMetaData == null) {
-              valueMetaData = findRangedMetaData(columnFamily, state, column.name().duplicate());
-            }
-            if (valueMetaData == null) {
-              m.put("value", ByteBufferUtil.getArray(column.value()));
-            } else {
-              String clazz = valueMetaData.getString("clazz");
-              Object value = TypeHelper.getTyped(clazz, column.value());
-              if (value instanceof ByteBuffer) {
-                m.put("value", TypeHelper.getBytes(column.value()));
-              } else {
-                m.put("value", value);
-              }
-            }
-          }
-        }
-        if (components.contains("timestamp")) {
-          m.put("timestamp", column.timestamp());
-        }
-        if (components.contains("markeddelete")) {
-          m.put("markeddelete", column.getMarkedForDeleteAt());
-        }
-        array.addObject(new JsonObject(m));
-      }
-    }
-    return array;
+  /* reversed lists the columns from the last one to the first, the order a reversed slice reads them */
+  public JsonArray internalCfRead(ColumnFamily columnFamily, JsonObject state, boolean reversed){
+    return ColumnDecoder.compile(state, columnFamily).read(columnFamily, reversed);
   }
   
   public void readCf(ColumnFamily columnFamily, JsonObject state, EventBus eb,
           Handler<Message<JsonArray>> filterReplyHandler) {
-    JsonArray array = internalCfRead(columnFamily, state);
+    readCf(columnFamily, state, false, eb, filterReplyHandler);
+  }
+
+  public void readCf(ColumnFamily columnFamily, JsonObject state, boolean reversed, EventBus eb,
+          Handler<Message<JsonArray>> filterReplyHandler) {
+    JsonArray array = internalCfRead(columnFamily, state, reversed);
     String filter = state.getString("currentFilter");
     eb.send("filters." + filter, array, filterReplyHandler);
   }
 
   public void write(List<IMutation> mutations, Message<JsonObject> event, Integer id, JsonObject state) {
+    List<Integer> ids = new ArrayList<Integer>(1);
+    ids.add(id);
+    write(mutations, event, ids, state);
+  }
+
+  /* reads the rows of the commands, timed as the storage time of the operation */
+  public List<Row> read(Message<JsonObject> event, List<ReadCommand> commands, ConsistencyLevel level)
+          throws IOException, UnavailableException, IsBootstrappingException, ReadTimeoutException {
+    TimerContext storage = IntravertMetrics.storage(IntravertMetrics.type(event.body())).time();
     try {
-      StorageProxy.mutate(mutations, ConsistencyLevel.ONE);
+      return StorageProxy.read(commands, level);
+    } finally {
+      storage.stop();
+    }
+  }
+
+  /* write mutations covering several operations, answering "OK" for each of them */
+  public void write(List<IMutation> mutations, Message<JsonObject> event, List<Integer> ids, JsonObject state) {
+    try {
+      TimerContext storage = IntravertMetrics.storage(IntravertMetrics.type(event.body())).time();
+      try {
+        StorageProxy.mutate(mutations, ConsistencyLevel.ONE);
+      } finally {
+        storage.stop();
+      }
 
-      event.reply(new JsonObject().putString(id.toString(), "OK"));
+      JsonObject reply = new JsonObject();
+      for (Integer id : ids) {
+        reply.putString(id.toString(), "OK");
+      }
+      event.reply(reply);
     } catch (WriteTimeoutException | UnavailableException | OverloadedException e) {
       event.reply(new JsonObject().putString("exception", e.getMessage()).putString("exceptionId",
-              id.toString()));
+              ids.get(0).toString()));
     }
   }
 
@@ -327,19 +261,15 @@ public class HandlerUtils {
   public ByteBuffer byteBufferForObject(Object o) {
     if (o instanceof Object[]) {
       Object[] comp = (Object[]) o;
-      List<byte[]> b = new ArrayList<byte[]>();
+      List<ByteBuffer> b = new ArrayList<ByteBuffer>(comp.length / 2);
       int[] sep = new int[comp.length / 2];
       for (int i = 0; i < comp.length; i = i + 2) {
         // get the element
-        ByteBuffer element = byteBufferForObject(comp[i]);
-        byte[] by = new byte[element.remaining()];
-        element.get(by);
-        b.add(by);
+        b.add(byteBufferForObject(comp[i]));
         // this part must be an unsigned int
         sep[i / 2] = (Integer) comp[i + 1];
       }
-      byte[] entireComp = CompositeTool.makeComposite(b, sep);
-      return ByteBuffer.wrap(entireComp);
+      return CompositeTool.compose(b, sep);
     } else if (o instanceof Integer) {
       return Int32Type.instance.decompose((Integer) o);
       // return ByteBufferUtil.bytes( ((Integer) o).intValue());
@@ -353,6 +283,14 @@ public class HandlerUtils {
       throw new RuntimeException("can not serializer " + o);
   }
 
+  /**
+   * @return the row key of a write, decoded the same way whether the write is
+   *         run alone or coalesced with others
+   */
+  public ByteBuffer rowKey(JsonObject params) {
+    return byteBufferForObject(resolveObject(params.getField(Operations.ROWKEY)));
+  }
+
   public Object resolveObject(Object o) {
     if (o instanceof JsonArray) {
       return ((JsonArray) o).toArray();
@@ -364,6 +302,9 @@ public class HandlerUtils {
       return o;
     } else if (o instanceof String) {
       return o;
+    } else if (o instanceof byte[] || o instanceof ByteBuffer) {
+      // binary values arrive as is from the Smile transport
+      return o;
     } else if (o instanceof Map) {
       Map<String, Object> map = (Map<String, Object>) o;
       Object typeAttr = map.get("type");
@@ -377,9 +318,8 @@ public class HandlerUtils {
          */
         return null;
       } else if (isBind(typeAttr)) {
-        Integer mark = (Integer) map.get("mark");
-        return null;
-        // return state.bindParams.get(mark);
+        // markers are bound before a prepared request runs
+        throw new IllegalArgumentException("Marker " + map.get("mark") + " is only valid in a prepared request");
       } else {
         throw new IllegalArgumentException("Do not know what todo with " + o);
       }
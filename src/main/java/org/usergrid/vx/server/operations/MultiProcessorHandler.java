@@ -3,7 +3,6 @@ package org.usergrid.vx.server.operations;
 import java.util.List;
 import java.util.Map;
 
-import org.usergrid.vx.experimental.multiprocessor.MultiProcessor;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
@@ -11,10 +10,10 @@ import org.vertx.java.core.json.JsonObject;
 
 public class MultiProcessorHandler implements Handler<Message<JsonObject>> {
   
-  MultiProcessor p;
+  private final String name;
   
-  public MultiProcessorHandler(MultiProcessor p){
-    this.p=p;
+  public MultiProcessorHandler(String name){
+    this.name = name;
   }
   
   @Override
@@ -22,7 +21,7 @@ public class MultiProcessorHandler implements Handler<Message<JsonObject>> {
     Integer id = event.body().getInteger("id");
     Map params = event.body().getObject("mpparams").toMap();
     Map mpres = event.body().getObject("mpres").toMap();
-    List<Map> results = p.multiProcess(mpres, params);
+    List<Map> results = ScriptRegistry.multiProcessors.get(name).multiProcess(mpres, params);
     JsonArray ja = new JsonArray();
     for (Map result: results){
       ja.addObject( new JsonObject(result));
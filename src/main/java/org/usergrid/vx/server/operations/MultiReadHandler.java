@@ -0,0 +1,213 @@
+package org.usergrid.vx.server.operations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.SliceByNamesReadCommand;
+import org.apache.cassandra.db.SliceFromReadCommand;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.exceptions.IsBootstrappingException;
+import org.apache.cassandra.exceptions.ReadTimeoutException;
+import org.apache.cassandra.exceptions.UnavailableException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.IntravertMetrics;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.json.impl.Base64;
+
+import com.yammer.metrics.core.TimerContext;
+
+/**
+ * Handles MULTIGET and MULTISLICE, and SLICEBYNAMES over several rows. One
+ * read command is built per row key and all of them go to Cassandra in a
+ * single StorageProxy.read call, which lets the coordinator fan them out in
+ * parallel. The reply is an object keyed by row key, each holding the same
+ * column array a GET or SLICE would return.
+ *
+ * Row keys are labelled the way reads return them: typed by the assumed row
+ * key type, as given in the request when they are strings, and base64
+ * encoded otherwise. In result mode the columns are also written to the
+ * result column family, as a single row read does.
+ */
+public class MultiReadHandler extends AbstractIntravertHandler {
+
+  private static final int DEFAULT_SIZE = 100;
+
+  private final EventBus eb;
+  private final boolean slice;
+
+  public MultiReadHandler(EventBus eb, boolean slice) {
+    this.eb = eb;
+    this.slice = slice;
+  }
+
+  @Override
+  public void handleUser(final Message<JsonObject> event) {
+    final Integer id = event.body().getInteger(Operations.ID);
+    JsonObject params = event.body().getObject(Operations.OP);
+    JsonObject state = event.body().getObject(Operations.STATE);
+    String ks = HandlerUtils.instance.determineKs(params, state, null);
+    QueryPath path = new QueryPath(HandlerUtils.instance.determineCf(params, state, null), null);
+
+    ColumnDecoder decoder = ColumnDecoder.compile(state, ks, path.columnFamilyName);
+    final Map<ByteBuffer, String> keys = new LinkedHashMap<ByteBuffer, String>();
+    final Map<String, Object> rowKeyParams = new LinkedHashMap<String, Object>();
+    List<ReadCommand> commands = new ArrayList<ReadCommand>();
+    for (Object rowKeyParam : params.getArray(Operations.ROWKEYS)) {
+      ByteBuffer rowkey = HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(rowKeyParam));
+      if (keys.containsKey(rowkey)) {
+        continue;
+      }
+      String label = label(decoder.rowKey(rowkey), rowKeyParam);
+      keys.put(rowkey, label);
+      rowKeyParams.put(label, rowKeyParam);
+      commands.add(slice ? sliceCommand(ks, rowkey, path, params) : getCommand(ks, rowkey, path, params));
+    }
+
+    List<Row> rows;
+    try {
+      rows = HandlerUtils.instance.read(event, commands, HandlerUtils.instance.determineConsistencyLevel(state));
+    } catch (ReadTimeoutException | UnavailableException | IsBootstrappingException | IOException e) {
+      throw new RuntimeException("Problem in multi row read", e);
+    }
+
+    // rows that do not exist keep an empty column array
+    final JsonObject byKey = new JsonObject();
+    for (String key : keys.values()) {
+      byKey.putArray(key, new JsonArray());
+    }
+    String filter = state.getString("currentFilter");
+    if (filter == null) {
+      TimerContext decoding = IntravertMetrics.decode(IntravertMetrics.type(event.body())).time();
+      for (Row row : rows) {
+        if (row.cf != null) {
+          byKey.putArray(keys.get(row.key.key), decoder.read(row.cf, false));
+        }
+      }
+      decoding.stop();
+      reply(event, id, rowKeyParams, byKey);
+      return;
+    }
+
+    final List<Row> found = new ArrayList<Row>(rows.size());
+    for (Row row : rows) {
+      if (row.cf != null) {
+        found.add(row);
+      }
+    }
+    if (found.isEmpty()) {
+      reply(event, id, rowKeyParams, byKey);
+      return;
+    }
+    final AtomicInteger outstanding = new AtomicInteger(found.size());
+    for (Row row : found) {
+      final String key = keys.get(row.key.key);
+      HandlerUtils.instance.readCf(row.cf, state, eb, new Handler<Message<JsonArray>>() {
+        @Override
+        public void handle(Message<JsonArray> filterEvent) {
+          synchronized (byKey) {
+            byKey.putArray(key, filterEvent.body());
+          }
+          if (outstanding.decrementAndGet() == 0) {
+            reply(event, id, rowKeyParams, byKey);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the label of a row key in the reply, which has to be a string
+   */
+  static String label(Object decoded, Object rowKeyParam) {
+    if (decoded instanceof byte[] || decoded instanceof ByteBuffer) {
+      if (rowKeyParam instanceof String) {
+        return (String) rowKeyParam;
+      }
+      byte[] bytes = decoded instanceof byte[] ? (byte[]) decoded : ByteBufferUtil.getArray((ByteBuffer) decoded);
+      return Base64.encodeBytes(bytes);
+    }
+    if (decoded instanceof List) {
+      return new JsonArray((List<Object>) decoded).encode();
+    }
+    return String.valueOf(decoded);
+  }
+
+  /* in result mode the columns read are written to the result column family before replying */
+  private void reply(final Message<JsonObject> event, final Integer id, Map<String, Object> rowKeyParams,
+                     final JsonObject byKey) {
+    JsonObject state = event.body().getObject(Operations.STATE);
+    JsonObject resultMode = HandlerUtils.instance.getResultMode(state);
+    if (resultMode == null) {
+      event.reply(new JsonObject().putObject(id.toString(), byKey));
+      return;
+    }
+    List<Object> rows = new ArrayList<Object>();
+    for (Map.Entry<String, Object> key : rowKeyParams.entrySet()) {
+      for (Object column : byKey.getArray(key.getKey())) {
+        JsonObject columnObject = column instanceof JsonObject
+                ? (JsonObject) column : new JsonObject((Map<String, Object>) column);
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put(Operations.KEYSPACE, resultMode.getString(Operations.KEYSPACE));
+        row.put(Operations.COLUMN_FAMILY, resultMode.getString(Operations.COLUMN_FAMILY));
+        // the key as requested, raw bytes would not survive the event bus
+        row.put(Operations.ROWKEY, key.getValue());
+        row.put(Operations.NAME, columnObject.getField(Operations.NAME));
+        row.put(Operations.VALUE, columnObject.getField(Operations.VALUE));
+        rows.add(row);
+      }
+    }
+    JsonObject batch = new JsonObject();
+    batch.putObject(Operations.OP, new JsonObject().putArray("rows", new JsonArray(rows)));
+    batch.putObject(Operations.STATE, state);
+    batch.putNumber(Operations.ID, id);
+    eb.send("operations.batchset", batch, new Handler<Message<JsonObject>>() {
+      @Override
+      public void handle(Message<JsonObject> written) {
+        event.reply(new JsonObject().putObject(id.toString(), byKey));
+      }
+    });
+  }
+
+  private ReadCommand getCommand(String ks, ByteBuffer rowkey, QueryPath path, JsonObject params) {
+    return new SliceByNamesReadCommand(ks, rowkey, path, columnNames(params));
+  }
+
+  /**
+   * @return the wanted columns of a SLICEBYNAMES, or the single name of a GET
+   */
+  static List<ByteBuffer> columnNames(JsonObject params) {
+    List<ByteBuffer> names = new ArrayList<ByteBuffer>();
+    JsonArray wanted = params.getArray(Operations.WANTEDCOLS);
+    if (wanted == null) {
+      names.add(HandlerUtils.instance.byteBufferForObject(
+              HandlerUtils.instance.resolveObject(params.getField(Operations.NAME))));
+    } else {
+      for (Object name : wanted) {
+        names.add(HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(name)));
+      }
+    }
+    return names;
+  }
+
+  private ReadCommand sliceCommand(String ks, ByteBuffer rowkey, QueryPath path, JsonObject params) {
+    ByteBuffer start = HandlerUtils.instance.byteBufferForObject(
+            HandlerUtils.instance.resolveObject(params.getField("start")));
+    ByteBuffer end = HandlerUtils.instance.byteBufferForObject(
+            HandlerUtils.instance.resolveObject(params.getField("end")));
+    Integer size = params.getInteger("size");
+    return new SliceFromReadCommand(ks, rowkey, path, start, end, false, size == null ? DEFAULT_SIZE : size);
+  }
+}
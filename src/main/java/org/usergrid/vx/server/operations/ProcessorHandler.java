@@ -5,7 +5,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
-import org.usergrid.vx.experimental.processor.Processor;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
@@ -13,10 +12,10 @@ import org.vertx.java.core.json.JsonObject;
 
 public class ProcessorHandler implements Handler<Message<JsonObject>> {
 
-  private Processor processor;
+  private final String name;
   
-  public ProcessorHandler(Processor p){
-    processor = p;
+  public ProcessorHandler(String name){
+    this.name = name;
   }
   
   @Override
@@ -27,7 +26,7 @@ public class ProcessorHandler implements Handler<Message<JsonObject>> {
     for (int i = 0 ; i < input.size() ; i++){
       rows.add( ((JsonObject) input.get(i)).toMap());
     }
-    List<Map> results = processor.process(rows);
+    List<Map> results = ScriptRegistry.processors.get(name).process(rows);
     JsonArray ja = new JsonArray();
     for (Map result: results){
       ja.addObject( new JsonObject(result));
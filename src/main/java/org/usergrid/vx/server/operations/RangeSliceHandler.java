@@ -0,0 +1,114 @@
+package org.usergrid.vx.server.operations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.db.RangeSliceCommand;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.RowPosition;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.dht.AbstractBounds;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.exceptions.ReadTimeoutException;
+import org.apache.cassandra.exceptions.UnavailableException;
+import org.apache.cassandra.service.StorageProxy;
+import org.apache.cassandra.service.StorageService;
+import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.IntravertMetrics;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+
+/**
+ * Handles RANGESLICE, a column slice over every row of a token range. The
+ * range is read with RangeSliceCommand a page of rows at a time, each page
+ * starting after the last key of the one before, until the row limit is
+ * reached or the range is exhausted. Rows without live columns (deleted
+ * rows that are not compacted away yet) are skipped and do not count against
+ * the limit. Filters are not applied to range slices.
+ */
+public class RangeSliceHandler extends AbstractIntravertHandler {
+
+  private static final int DEFAULT_SIZE = 100;
+  private static final int DEFAULT_LIMIT = 100;
+  private static final int PAGE_ROWS = 100;
+
+  @Override
+  public void handleUser(Message<JsonObject> event) {
+    Integer id = event.body().getInteger(Operations.ID);
+    JsonObject params = event.body().getObject(Operations.OP);
+    JsonObject state = event.body().getObject(Operations.STATE);
+    String ks = HandlerUtils.instance.determineKs(params, state, null);
+    String cf = HandlerUtils.instance.determineCf(params, state, null);
+
+    ByteBuffer start = HandlerUtils.instance.byteBufferForObject(
+            HandlerUtils.instance.resolveObject(params.getField("start")));
+    ByteBuffer end = HandlerUtils.instance.byteBufferForObject(
+            HandlerUtils.instance.resolveObject(params.getField("end")));
+    Integer size = params.getInteger("size");
+    Integer limit = params.getInteger(Operations.LIMIT);
+    boolean reversed = params.getBoolean(Operations.REVERSED, false);
+    SliceQueryFilter predicate = new SliceQueryFilter(start, end, reversed, size == null ? DEFAULT_SIZE : size);
+
+    IPartitioner<?> partitioner = StorageService.getPartitioner();
+    Range<RowPosition> range = Range.makeRowRange(token(partitioner, params.getString(Operations.START_TOKEN)),
+            token(partitioner, params.getString(Operations.END_TOKEN)), partitioner);
+    RowPosition right = range.right;
+
+    ColumnDecoder decoder = ColumnDecoder.compile(state, ks, cf);
+    String type = IntravertMetrics.type(event.body());
+    Timer storage = IntravertMetrics.storage(type);
+    Timer decode = IntravertMetrics.decode(type);
+    JsonArray result = new JsonArray();
+    int wanted = limit == null ? DEFAULT_LIMIT : limit;
+    AbstractBounds<RowPosition> bounds = range;
+    while (result.size() < wanted) {
+      int pageRows = Math.min(PAGE_ROWS, wanted - result.size());
+      List<Row> rows;
+      TimerContext reading = storage.time();
+      try {
+        rows = StorageProxy.getRangeSlice(new RangeSliceCommand(ks, cf, null, predicate, bounds, pageRows),
+                HandlerUtils.instance.determineConsistencyLevel(state));
+      } catch (ReadTimeoutException | UnavailableException | IOException e) {
+        throw new RuntimeException("Problem in range slice", e);
+      } finally {
+        reading.stop();
+      }
+      TimerContext decoding = decode.time();
+      for (Row row : rows) {
+        if (row.cf != null && hasLiveColumn(row.cf) && result.size() < wanted) {
+          result.addObject(new JsonObject()
+                  .putValue(Operations.ROWKEY, decoder.rowKey(row.key.key))
+                  .putArray(Operations.COLUMNS, decoder.read(row.cf, reversed)));
+        }
+      }
+      decoding.stop();
+      if (rows.size() < pageRows) {
+        break;
+      }
+      bounds = new Range<RowPosition>(rows.get(rows.size() - 1).key, right, partitioner);
+    }
+    event.reply(new JsonObject().putArray(id.toString(), result));
+  }
+
+  private static Token<?> token(IPartitioner<?> partitioner, String token) {
+    return token == null ? partitioner.getMinimumToken() : partitioner.getTokenFactory().fromString(token);
+  }
+
+  private static boolean hasLiveColumn(ColumnFamily cf) {
+    for (IColumn column : cf) {
+      if (column.isLive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -4,12 +4,15 @@ import java.nio.ByteBuffer;
 
 import org.apache.cassandra.db.ColumnFamily;
 import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.IntravertMetrics;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
+import com.yammer.metrics.core.TimerContext;
+
 public class ReadHandler {
 
   private JsonObject params;
@@ -17,6 +20,9 @@ public class ReadHandler {
   private Message<JsonObject> event;
   private EventBus eb;
   private ByteBuffer rowKey;
+  private boolean paged;
+  private boolean reversed;
+  private String cursor;
 
   public ReadHandler(Message<JsonObject> event, EventBus eb) {
     this.event = event;
@@ -25,33 +31,51 @@ public class ReadHandler {
     this.eb = eb;
   }
 
+  /**
+   * Lists the columns last to first, as a reversed slice returns them.
+   */
+  public ReadHandler reversed(boolean reversed) {
+    this.reversed = reversed;
+    return this;
+  }
+
+  /**
+   * Replies with one page of a slice, the columns together with the cursor
+   * of the next page or null when there is none.
+   */
+  public void handlePage(ColumnFamily cf, String cursor) {
+    this.paged = true;
+    this.cursor = cursor;
+    handleRead(cf);
+  }
+
   public void handleRead(ColumnFamily cf) {
     final Integer id = event.body().getInteger("id");
     JsonArray array;
     final JsonObject resultMode = HandlerUtils.instance.getResultMode(state);
     if (cf == null) {
-      event.reply(new JsonObject().putArray(id.toString(), new JsonArray()));
+      event.reply(result(id, new JsonArray()));
     } else {
       String filter = state.getString("currentFilter");
       if (filter == null) {
-        array = HandlerUtils.instance.internalCfRead(cf, state);
-        JsonObject response = new JsonObject();
+        TimerContext decoding = IntravertMetrics.decode(IntravertMetrics.type(event.body())).time();
+        array = HandlerUtils.instance.internalCfRead(cf, state, reversed);
+        decoding.stop();
         if (resultMode == null){
           
-          response.putArray(id.toString(), array);
-          event.reply(response);
+          event.reply(result(id, array));
         } else {
           //System.out.println("This will fail fix me ");
           //eb.send("operations.batchset", array);
         }
         
       } else {
-        HandlerUtils.instance.readCf(cf, state, eb, new Handler<Message<JsonArray>>() {
+        HandlerUtils.instance.readCf(cf, state, reversed, eb, new Handler<Message<JsonArray>>() {
           @Override
           public void handle(final Message<JsonArray> filterEvent) {
             
             if (resultMode == null){
-              event.reply(new JsonObject().putArray(id.toString(), filterEvent.body()));
+              event.reply(result(id, filterEvent.body()));
             } else {
               JsonObject obj = new JsonObject();
               obj.putObject(Operations.OP, new JsonObject().putArray("rows", filterEvent.body()) );
@@ -60,7 +84,7 @@ public class ReadHandler {
               eb.send("operations.batchset", obj, new Handler<Message<JsonObject>>(){
                 @Override
                 public void handle(Message<JsonObject> arg0) {
-                  event.reply(new JsonObject().putArray(id.toString(), filterEvent.body()));
+                  event.reply(result(id, filterEvent.body()));
                 }
               });
             }
@@ -71,4 +95,14 @@ public class ReadHandler {
     }
   }
 
+  private JsonObject result(Integer id, JsonArray columns) {
+    if (!paged) {
+      return new JsonObject().putArray(id.toString(), columns);
+    }
+    JsonObject page = new JsonObject()
+            .putArray(Operations.COLUMNS, columns)
+            .putString(Operations.CURSOR, cursor);
+    return new JsonObject().putObject(id.toString(), page);
+  }
+
 }
@@ -1,6 +1,7 @@
 package org.usergrid.vx.server.operations;
 
 import org.usergrid.vx.experimental.Operations;
+import org.usergrid.vx.server.DiagnosticLog;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 
@@ -13,11 +14,11 @@ public class ResultModeHandler extends AbstractIntravertHandler {
    */
   @Override
   public void handleUser(Message<JsonObject> event) {
-    System.out.println("result mode"+event.body());
     Integer id = event.body().getInteger("id");
     JsonObject params = event.body().getObject(Operations.OP);
-    JsonObject state = event.body().getObject(Operations.STATE);
+    JsonObject state = new JsonObject();
     boolean on = params.getBoolean(Operations.ON);
+    DiagnosticLog.event(event.body(), "resultmode on=" + on);
     if (on) {
       HandlerUtils.instance.activateResultMode(state, params.getString(Operations.KEYSPACE), params.getString(Operations.COLUMN_FAMILY));
     } else {
@@ -0,0 +1,110 @@
+package org.usergrid.vx.server.operations;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.usergrid.vx.experimental.ServiceProcessor;
+import org.usergrid.vx.experimental.filter.Filter;
+import org.usergrid.vx.experimental.multiprocessor.MultiProcessor;
+import org.usergrid.vx.experimental.processor.Processor;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+
+/**
+ * The scripts created by name with CREATEFILTER, CREATEPROCESSOR,
+ * CREATEMULTIPROCESS and CREATESERVICEPROCESS.
+ *
+ * Clients create their scripts again with every request, and each create
+ * used to compile the script and register one more handler on its address.
+ * A script is now known by the hash of its language and source. Creating a
+ * name again with the same script does nothing, and going back to a script
+ * the name ran before does not compile it again. Creating a name with a
+ * different script swaps it in as the next version of that name; the handler
+ * of the name is registered once and always runs its current version.
+ *
+ * Compiled scripts are cached per name, as a script may keep state (a
+ * service processor is a Groovy object) and must not be shared with other
+ * names that happen to use the same source. The cache is bounded by the
+ * <code>scriptCacheSize</code> system property, so versions no name runs any
+ * more are evicted. A name keeps its current version until it is replaced.
+ */
+public class ScriptRegistry<T> {
+
+  public static final ScriptRegistry<Filter> filters = new ScriptRegistry<Filter>();
+  public static final ScriptRegistry<Processor> processors = new ScriptRegistry<Processor>();
+  public static final ScriptRegistry<MultiProcessor> multiProcessors = new ScriptRegistry<MultiProcessor>();
+  public static final ScriptRegistry<ServiceProcessor> serviceProcessors = new ScriptRegistry<ServiceProcessor>();
+
+  private static final int DEFAULT_CACHE_SIZE = 100;
+
+  public interface Compiler<T> {
+    /**
+     * @throws IllegalArgumentException when the language is not supported
+     */
+    T compile(String spec, String source);
+  }
+
+  private final ConcurrentMap<String, Version<T>> current = new ConcurrentHashMap<String, Version<T>>();
+  private final Cache<String, T> compiled;
+
+  public ScriptRegistry() {
+    this(Integer.getInteger("scriptCacheSize", DEFAULT_CACHE_SIZE));
+  }
+
+  public ScriptRegistry(int cacheSize) {
+    compiled = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+  }
+
+  /**
+   * @return the current version of the script created with the name, or null
+   */
+  public T get(String name) {
+    Version<T> version = current.get(name);
+    return version == null ? null : version.script;
+  }
+
+  /**
+   * @return the number of the current version of the name, 0 when it is unknown
+   */
+  public int version(String name) {
+    Version<T> version = current.get(name);
+    return version == null ? 0 : version.number;
+  }
+
+  /**
+   * Makes the script the current version of the name, unless it already is.
+   *
+   * @return true the first time the name is created, when the caller has to
+   *         register the handler that runs it
+   */
+  public synchronized boolean create(String name, String spec, String source, Compiler<T> compiler) {
+    String hash = Hashing.sha1().hashString(spec + '\n' + source, Charsets.UTF_8).toString();
+    Version<T> existing = current.get(name);
+    if (existing != null && existing.hash.equals(hash)) {
+      return false;
+    }
+    String key = name + '\n' + hash;
+    T script = compiled.getIfPresent(key);
+    if (script == null) {
+      script = compiler.compile(spec, source);
+      compiled.put(key, script);
+    }
+    current.put(name, new Version<T>(existing == null ? 1 : existing.number + 1, hash, script));
+    return existing == null;
+  }
+
+  private static class Version<T> {
+    private final int number;
+    private final String hash;
+    private final T script;
+
+    Version(int number, String hash, T script) {
+      this.number = number;
+      this.hash = hash;
+      this.script = script;
+    }
+  }
+}
@@ -10,11 +10,11 @@ import org.vertx.java.core.json.JsonObject;
 
 public class ServiceProcessorHandler implements Handler<Message<JsonObject>> {
 
-  ServiceProcessor sp;
+  private final String name;
   EventBus eb;
   
-  public ServiceProcessorHandler(ServiceProcessor sp, EventBus eb){
-    this.sp=sp;
+  public ServiceProcessorHandler(String name, EventBus eb){
+    this.name=name;
     this.eb=eb;
   }
   
@@ -26,6 +26,7 @@ public class ServiceProcessorHandler implements Handler<Message<JsonObject>> {
     try {
       id = event.body().getInteger("id");
       JsonObject response = new JsonObject();
+      ServiceProcessor sp = ScriptRegistry.serviceProcessors.get(name);
       sp.process(event.body(), event.body().getObject("state"), response , eb);
       
       event.reply(
@@ -11,7 +11,7 @@ public class SetColumnFamilyHandler implements Handler<Message<JsonObject>> {
         Integer id = event.body().getInteger("id");
         JsonObject params = event.body().getObject("op");
 
-        JsonObject state = event.body().getObject("state");
+        JsonObject state = new JsonObject();
         state.putString("currentColumnFamily", params.getString("columnfamily"));
 
         event.reply(new JsonObject()
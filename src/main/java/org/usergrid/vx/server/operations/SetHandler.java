@@ -19,9 +19,19 @@ public class SetHandler extends AbstractIntravertHandler{
     JsonObject params = event.body().getObject(Operations.OP);
     JsonObject state = event.body().getObject(Operations.STATE);
     RowMutation rm = new RowMutation(HandlerUtils.instance.determineKs(params, state, null),
-            HandlerUtils.instance.byteBufferForObject(params.getField(Operations.ROWKEY)));
+            HandlerUtils.instance.rowKey(params));
+    addColumn(rm, params, state);
+    List<IMutation> mutations = new ArrayList<IMutation>();
+    mutations.add(rm);
+    HandlerUtils.instance.write(mutations, event, id, state);
+  }
+
+  /**
+   * Adds the column of a SET operation to a mutation of its row.
+   */
+  static void addColumn(RowMutation rm, JsonObject params, JsonObject state) {
     QueryPath qp = new QueryPath(HandlerUtils.instance.determineCf(params, state, null), null,
-            HandlerUtils.instance.byteBufferForObject(params.getField(Operations.NAME)));
+            HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(params.getField(Operations.NAME))));
     Object val = params.getField(Operations.VALUE);
     Integer ttl = params.getInteger(Operations.TTL);
     if (ttl == null) {
@@ -30,8 +40,5 @@ public class SetHandler extends AbstractIntravertHandler{
     } else {
       rm.add(qp, HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(val)), System.nanoTime(), ttl);
     }
-    List<IMutation> mutations = new ArrayList<IMutation>();
-    mutations.add(rm);
-    HandlerUtils.instance.write(mutations, event, id, state);
   }
 }
@@ -10,8 +10,8 @@ public class SetKeyspaceHandler implements Handler<Message<JsonObject>> {
     public void handle(Message<JsonObject> event) {
         Integer id = event.body().getInteger("id");
         JsonObject params = event.body().getObject("op");
-        JsonObject state = event.body().getObject("state");
-        state.putString("currentKeyspace", HandlerUtils.instance.determineKs(params, state, null));
+        String ks = HandlerUtils.instance.determineKs(params, event.body().getObject("state"), null);
+        JsonObject state = new JsonObject().putString("currentKeyspace", ks);
 
         event.reply(new JsonObject()
             .putString(id.toString(), "OK")
@@ -0,0 +1,58 @@
+package org.usergrid.vx.server.operations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.Row;
+import org.apache.cassandra.db.SliceByNamesReadCommand;
+import org.apache.cassandra.db.filter.QueryPath;
+import org.apache.cassandra.exceptions.IsBootstrappingException;
+import org.apache.cassandra.exceptions.ReadTimeoutException;
+import org.apache.cassandra.exceptions.UnavailableException;
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Handles SLICEBYNAMES, reading a list of named columns of a row with a
+ * single SliceByNamesReadCommand. When the operation carries row keys
+ * instead of a row key the names are read from each of the rows, see
+ * {@link MultiReadHandler}.
+ */
+public class SliceByNamesHandler extends AbstractIntravertHandler {
+
+  private final EventBus eb;
+  private final MultiReadHandler multiRead;
+
+  public SliceByNamesHandler(EventBus eb) {
+    this.eb = eb;
+    this.multiRead = new MultiReadHandler(eb, false);
+  }
+
+  @Override
+  public void handleUser(Message<JsonObject> event) {
+    JsonObject params = event.body().getObject(Operations.OP);
+    JsonObject state = event.body().getObject(Operations.STATE);
+    if (params.getArray(Operations.ROWKEYS) != null) {
+      multiRead.handleUser(event);
+      return;
+    }
+    ByteBuffer rowkey = HandlerUtils.instance.byteBufferForObject(
+            HandlerUtils.instance.resolveObject(params.getField(Operations.ROWKEY)));
+    QueryPath path = new QueryPath(HandlerUtils.instance.determineCf(params, state, null), null);
+    ReadCommand command = new SliceByNamesReadCommand(HandlerUtils.instance.determineKs(params, state, null),
+            rowkey, path, MultiReadHandler.columnNames(params));
+    try {
+      List<Row> rows = HandlerUtils.instance.read(event, Arrays.asList(command), HandlerUtils.instance.determineConsistencyLevel(state));
+      ColumnFamily cf = rows.get(0).cf;
+      new ReadHandler(event, eb).handleRead(cf);
+    } catch (ReadTimeoutException | UnavailableException | IsBootstrappingException | IOException e) {
+      throw new RuntimeException("Problem in slice by names", e);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.server.operations;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Continuation token of a paged SLICE. It holds the name of the last column
+ * returned and the direction of the slice, so the next page starts right
+ * after that column. Clients should treat the encoded form as opaque.
+ */
+public class SliceCursor {
+
+  private final ByteBuffer lastName;
+  private final boolean reversed;
+
+  public SliceCursor(ByteBuffer lastName, boolean reversed) {
+    this.lastName = lastName;
+    this.reversed = reversed;
+  }
+
+  public ByteBuffer getLastName() {
+    return lastName.duplicate();
+  }
+
+  public boolean isReversed() {
+    return reversed;
+  }
+
+  public String encode() {
+    return (reversed ? "1" : "0") + ByteBufferUtil.bytesToHex(lastName);
+  }
+
+  public static SliceCursor decode(String token) {
+    if (token == null || token.length() < 1 || token.length() % 2 != 1
+            || (token.charAt(0) != '0' && token.charAt(0) != '1')) {
+      throw new IllegalArgumentException("Invalid slice cursor " + token);
+    }
+    try {
+      return new SliceCursor(ByteBufferUtil.hexToBytes(token.substring(1)), token.charAt(0) == '1');
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid slice cursor " + token, e);
+    }
+  }
+}
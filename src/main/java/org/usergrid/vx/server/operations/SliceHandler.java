@@ -5,8 +5,7 @@ import org.apache.cassandra.db.filter.QueryPath;
 import org.apache.cassandra.exceptions.IsBootstrappingException;
 import org.apache.cassandra.exceptions.ReadTimeoutException;
 import org.apache.cassandra.exceptions.UnavailableException;
-import org.apache.cassandra.service.StorageProxy;
-import org.vertx.java.core.Handler;
+import org.usergrid.vx.experimental.Operations;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
@@ -14,11 +13,13 @@ import org.vertx.java.core.json.JsonObject;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 public class SliceHandler extends AbstractIntravertHandler {
 
+  private static final int DEFAULT_SIZE = 100;
+
   private EventBus eb;
 
   public SliceHandler(EventBus eb) {
@@ -27,29 +28,85 @@ public class SliceHandler extends AbstractIntravertHandler {
 
   @Override
   public void handleUser(final Message<JsonObject> event) {
-    final Integer id = event.body().getInteger("id");
     JsonObject params = event.body().getObject("op");
     JsonObject state = event.body().getObject("state");
-    Map<String, Object> paramsMap = params.toMap();
-    Object rowKeyParam = paramsMap.get("rowkey");
-    Object startParam = paramsMap.get("start");
-    Object endParam = paramsMap.get("end");
+    Object rowKeyParam = params.getField("rowkey");
+    Object startParam = params.getField("start");
+    Object endParam = params.getField("end");
+    Integer sizeParam = params.getInteger("size");
+    int size = sizeParam == null ? DEFAULT_SIZE : sizeParam;
+    String cursorParam = params.getString(Operations.CURSOR);
+    boolean paged = cursorParam != null || params.getBoolean(Operations.PAGED, false);
+
     ByteBuffer rowkey = HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(rowKeyParam));
-    ByteBuffer start = HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(startParam));
     ByteBuffer end = HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(endParam));
+    ByteBuffer start;
+    boolean reversed = params.getBoolean(Operations.REVERSED, false);
+    int count = size;
+    SliceCursor cursor = null;
+    if (cursorParam == null) {
+      start = HandlerUtils.instance.byteBufferForObject(HandlerUtils.instance.resolveObject(startParam));
+    } else {
+      // the slice bounds are inclusive, read one extra column to make up for the last one of the previous page
+      cursor = SliceCursor.decode(cursorParam);
+      start = cursor.getLastName();
+      reversed = cursor.isReversed();
+      count = size + 1;
+    }
     List<ReadCommand> commands = new ArrayList<ReadCommand>(1);
     QueryPath path = new QueryPath(HandlerUtils.instance.determineCf(params, state, null), null);
     SliceFromReadCommand sr = new SliceFromReadCommand(HandlerUtils.instance.determineKs(params, state, null), 
-            rowkey, path, start, end, false, 100);
+            rowkey, path, start, end, reversed, count);
     commands.add(sr);
     List<Row> results = null;
     try {
-      results = StorageProxy.read(commands, HandlerUtils.instance.determineConsistencyLevel(state));
+      results = HandlerUtils.instance.read(event, commands, HandlerUtils.instance.determineConsistencyLevel(state));
       ColumnFamily cf = results.get(0).cf;
-      new ReadHandler(event, eb).handleRead(cf);
+      if (!paged) {
+        new ReadHandler(event, eb).reversed(reversed).handleRead(cf);
+        return;
+      }
+      String next = null;
+      if (cf != null) {
+        if (cursor != null) {
+          cf.remove(cursor.getLastName());
+        }
+        IColumn last = trim(cf, reversed, size);
+        if (last != null) {
+          next = new SliceCursor(last.name(), reversed).encode();
+        }
+      }
+      new ReadHandler(event, eb).reversed(reversed).handlePage(cf, next);
     } catch (ReadTimeoutException | UnavailableException | IsBootstrappingException | IOException e) {
       throw new RuntimeException("Problem in slice", e);
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * Drops the live columns beyond size in read order.
+   *
+   * @return the last column of a full page, or null when the slice is exhausted
+   */
+  private static IColumn trim(ColumnFamily cf, boolean reversed, int size) {
+    Collection<IColumn> columns = reversed ? cf.getReverseSortedColumns() : cf.getSortedColumns();
+    List<ByteBuffer> extra = new ArrayList<ByteBuffer>();
+    IColumn last = null;
+    int live = 0;
+    for (IColumn column : columns) {
+      if (!column.isLive()) {
+        continue;
+      }
+      if (live < size) {
+        live++;
+        last = column;
+      } else {
+        extra.add(column.name());
+      }
+    }
+    for (ByteBuffer name : extra) {
+      cf.remove(name);
+    }
+    return live < size ? null : last;
+  }
+
+}
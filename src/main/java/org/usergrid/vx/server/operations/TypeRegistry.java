@@ -0,0 +1,109 @@
+package org.usergrid.vx.server.operations;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Schema;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Server side types of each column family, set by an ASSUME with persist.
+ *
+ * A plain ASSUME only lasts for the request that holds it, so clients resend
+ * them with every request and every operation after them carries them in
+ * its state. Persisted types are kept here instead and apply to every
+ * request; the ASSUMEs of a request only override them. The types of a
+ * column family are dropped when its schema changes, see
+ * {@link org.usergrid.vx.server.IntravertClusterNotifier}.
+ *
+ * The registry is local to the server, types persisted on one node are not
+ * seen by the others.
+ *
+ * Requests read in schema typed mode decode with the types the schema
+ * declares for the column family, with the persisted types over them. Those
+ * are built from CFMetaData the first time the column family is read and
+ * kept until its schema changes. The mode is off unless the
+ * <code>schemaTypes</code> system property is set, a request can turn it on
+ * or off for itself.
+ */
+public class TypeRegistry {
+
+  public static final TypeRegistry instance = new TypeRegistry();
+
+  private static final ColumnTypes NONE = new ColumnTypes();
+
+  private final boolean schemaTyped = Boolean.getBoolean("schemaTypes");
+  private final ConcurrentMap<String, ColumnTypes> types = new ConcurrentHashMap<String, ColumnTypes>();
+  private final ConcurrentMap<String, ColumnTypes> schemaTypes = new ConcurrentHashMap<String, ColumnTypes>();
+
+  /**
+   * @return true when requests are read in schema typed mode unless they say
+   *         otherwise
+   */
+  public boolean isSchemaTyped() {
+    return schemaTyped;
+  }
+
+  /**
+   * @return the types of the column family, they must not be changed
+   */
+  public ColumnTypes get(String ks, String cf) {
+    ColumnTypes registered = types.get(key(ks, cf));
+    return registered == null ? NONE : registered;
+  }
+
+  /**
+   * @return the types of the schema of the column family with the persisted
+   *         ones over them, they must not be changed
+   */
+  public ColumnTypes getSchemaTyped(String ks, String cf) {
+    ColumnTypes built = schemaTypes.get(key(ks, cf));
+    return built == null ? build(ks, cf) : built;
+  }
+
+  /* synchronized with invalidate, so types built from a replaced schema are not kept */
+  private synchronized ColumnTypes build(String ks, String cf) {
+    CFMetaData metadata = Schema.instance.getCFMetaData(ks, cf);
+    if (metadata == null) {
+      return get(ks, cf);
+    }
+    ColumnTypes built = new ColumnTypes().seed(metadata).overlay(get(ks, cf));
+    schemaTypes.put(key(ks, cf), built);
+    return built;
+  }
+
+  /**
+   * Adds a type in the layout of the request state: section is meta,
+   * metaColumn or metaRanged and key is "keyspace columnfamily suffix".
+   * Readers keep the types they already hold, the change is made on a copy.
+   */
+  public synchronized void assume(String ks, String cf, String section, String key, JsonObject metadata) {
+    JsonObject source = new JsonObject().putObject(section, new JsonObject().putObject(key, metadata));
+    types.put(key(ks, cf), get(ks, cf).copy().load(source, key(ks, cf)));
+    schemaTypes.remove(key(ks, cf));
+  }
+
+  public synchronized void invalidate(String ks, String cf) {
+    types.remove(key(ks, cf));
+    schemaTypes.remove(key(ks, cf));
+  }
+
+  public synchronized void invalidate(String ks) {
+    String prefix = ks + ' ';
+    for (String key : types.keySet()) {
+      if (key.startsWith(prefix)) {
+        types.remove(key);
+      }
+    }
+    for (String key : schemaTypes.keySet()) {
+      if (key.startsWith(prefix)) {
+        schemaTypes.remove(key);
+      }
+    }
+  }
+
+  private static String key(String ks, String cf) {
+    return ks + ' ' + cf + ' ';
+  }
+}
@@ -107,4 +107,61 @@ public class AssumeITest {
     Assert.assertEquals("nice", x.get(3).get("value"));
   }
 
+  @Test
+  @RequiresColumnFamily(ksName = "myks", cfName = "persistcf")
+  public void persistedAssumeTest() throws Exception {
+    IntraReq r = new IntraReq();
+    r.add( Operations.persist(Operations.assumeOp("myks", "persistcf", "value", "UTF8Type")))
+     .add( Operations.persist(Operations.assumeColumnOp("myks", "persistcf", "aint", "Int32Type")))
+     .add( Operations.setKeyspaceOp("myks"))
+     .add( Operations.setColumnFamilyOp("persistcf"))
+     .add( Operations.setOp("prow", "astring", "wow") )
+     .add( Operations.setOp("prow", "aint", 5) );
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    ic2.sendBlocking(r);
+
+    IntraReq get = new IntraReq();
+    get.add( Operations.setKeyspaceOp("myks"))
+       .add( Operations.setColumnFamilyOp("persistcf"))
+       .add( Operations.sliceOp("prow", "a", "b", 2));
+    IntraRes res = new IntraClient2("localhost", 8080).sendBlocking(get);
+    List<Map> x = (List<Map>) res.getOpsRes().get("2");
+    Assert.assertEquals(5, x.get(0).get("value"));
+    Assert.assertEquals("wow", x.get(1).get("value"));
+
+    IntraReq override = new IntraReq();
+    override.add( Operations.assumeColumnOp("myks", "persistcf", "aint", "BytesType"))
+       .add( Operations.setKeyspaceOp("myks"))
+       .add( Operations.setColumnFamilyOp("persistcf"))
+       .add( Operations.getOp("prow", "astring"));
+    res = new IntraClient2("localhost", 8080).sendBlocking(override);
+    x = (List<Map>) res.getOpsRes().get("3");
+    Assert.assertEquals("wow", x.get(0).get("value"));
+  }
+
+  @Test
+  @RequiresColumnFamily(ksName = "myks", cfName = "schemacf")
+  public void schemaTypedTest() throws Exception {
+    IntraReq r = new IntraReq();
+    r.add( Operations.setKeyspaceOp("myks"))
+     .add( Operations.setColumnFamilyOp("schemacf"))
+     .add( Operations.setOp("srow", "acol", 7) )
+     .add( Operations.sliceOp("srow", "a", "b", 1));
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(r);
+    List<Map> x = (List<Map>) res.getOpsRes().get("3");
+    Assert.assertFalse("acol".equals(x.get(0).get("name")));
+
+    IntraReq typed = new IntraReq();
+    typed.setSchemaTypes(true);
+    typed.add( Operations.assumeOp("myks", "schemacf", "value", "Int32Type"))
+       .add( Operations.setKeyspaceOp("myks"))
+       .add( Operations.setColumnFamilyOp("schemacf"))
+       .add( Operations.sliceOp("srow", "a", "b", 1));
+    res = ic2.sendBlocking(typed);
+    x = (List<Map>) res.getOpsRes().get("3");
+    Assert.assertEquals("acol", x.get(0).get("name"));
+    Assert.assertEquals(7, x.get(0).get("value"));
+  }
+
 }
@@ -91,6 +91,32 @@ public class CompositeITest {
     Assert.assertEquals(2, c2.comparator.compose(c2.value));
   }
 
-  
-  
+  @Test
+  @RequiresColumnFamily(ksName = "compks", cfName = "compslice", comparator = "CompositeType(UTF8Type,Int32Type)")
+  public void decomposedSliceTest() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("compks"));
+    req.add(Operations.setColumnFamilyOp("compslice"));
+    req.add(Operations.assumeOp("compks", "compslice", "column", "CompositeType(UTF8Type,Int32Type)", true));
+    req.add(Operations.assumeOp("compks", "compslice", "value", "UTF8Type"));
+    req.add(Operations.setOp("rowc", Operations.composite(0, "a", 1), "a1"));
+    req.add(Operations.setOp("rowc", Operations.composite(0, "a", 2), "a2"));
+    req.add(Operations.setOp("rowc", Operations.composite(0, "b", 1), "b1"));
+    req.add(Operations.sliceOp("rowc", Operations.compositeStart(true, "a"), Operations.compositeEnd(true, "a"), 10)
+            .set(Operations.USER_OP_ID, "prefix"));
+    req.add(Operations.sliceOp("rowc", Operations.compositeStart(false, "a"), Operations.compositeEnd(true, "b"), 10)
+            .set(Operations.USER_OP_ID, "after"));
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    List<Map> prefix = (List<Map>) res.getOpsRes().get("prefix");
+    Assert.assertEquals(2, prefix.size());
+    Assert.assertEquals(Arrays.asList("a", 1), prefix.get(0).get("name"));
+    Assert.assertEquals(Arrays.asList("a", 2), prefix.get(1).get("name"));
+    Assert.assertEquals("a2", prefix.get(1).get("value"));
+    List<Map> after = (List<Map>) res.getOpsRes().get("after");
+    Assert.assertEquals(1, after.size());
+    Assert.assertEquals(Arrays.asList("b", 1), after.get(0).get("name"));
+  }
+
 }
@@ -0,0 +1,90 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.experimental;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompositeToolUnitTest {
+
+  @Test
+  public void matchesCompositeType() {
+    CompositeType type = CompositeType.getInstance(Arrays.<AbstractType<?>>asList(UTF8Type.instance, Int32Type.instance));
+    ByteBuffer expected = type.builder().add(ByteBufferUtil.bytes("bob")).add(Int32Type.instance.decompose(5)).build();
+    List<ByteBuffer> parts = Arrays.asList(ByteBufferUtil.bytes("bob"), Int32Type.instance.decompose(5));
+    Assert.assertEquals(expected, CompositeTool.compose(parts, null));
+    Assert.assertArrayEquals(ByteBufferUtil.getArray(expected),
+            CompositeTool.makeComposite(CompositeTool.bbArrayToByteArray(parts)));
+  }
+
+  @Test
+  public void decomposeIsAView() {
+    ByteBuffer composite = CompositeTool.compose(
+            Arrays.asList(ByteBufferUtil.bytes("bob"), ByteBufferUtil.bytes("tall")), new int[] { 0, 1 });
+    List<ByteBuffer> parts = CompositeTool.decompose(composite);
+    Assert.assertEquals(2, parts.size());
+    Assert.assertEquals(ByteBufferUtil.bytes("bob"), parts.get(0));
+    Assert.assertEquals(ByteBufferUtil.bytes("tall"), parts.get(1));
+    Assert.assertSame(composite.array(), parts.get(1).array());
+    Assert.assertEquals(1, composite.get(composite.limit() - 1));
+  }
+
+  @Test
+  public void longComponents() {
+    byte[] big = new byte[300];
+    Arrays.fill(big, (byte) 7);
+    byte[] composite = CompositeTool.makeComposite(Arrays.asList(big, new byte[] { 1 }));
+    List<byte[]> parts = CompositeTool.readComposite(composite);
+    Assert.assertEquals(2, parts.size());
+    Assert.assertArrayEquals(big, parts.get(0));
+    Assert.assertArrayEquals(new byte[] { 1 }, parts.get(1));
+    Assert.assertEquals(300, CompositeTool.decompose(ByteBuffer.wrap(composite)).get(0).remaining());
+  }
+
+  /* the codec has to encode exactly as the stream based encoder it replaced */
+  @Test
+  public void matchesTheStreamEncoder() {
+    byte[] big = new byte[300];
+    Arrays.fill(big, (byte) 3);
+    List<byte[]> parts = Arrays.asList("someuser".getBytes(), new byte[0], big, new byte[] { 0, 0, 0, 5 });
+    Assert.assertArrayEquals(streamComposite(parts),
+            ByteBufferUtil.getArray(CompositeTool.compose(CompositeTool.byteArrayToBBArray(parts), null)));
+    Assert.assertArrayEquals(streamComposite(parts), CompositeTool.makeComposite(parts));
+  }
+
+  private static byte[] streamComposite(List<byte[]> b) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    for (byte[] component : b) {
+      bos.write((byte) ((component.length >> 8) & 0xFF));
+      bos.write((byte) (component.length & 0xFF));
+      for (byte x : component) {
+        bos.write(x & 0xFF);
+      }
+      bos.write((byte) 0);
+    }
+    return bos.toByteArray();
+  }
+}
@@ -26,6 +26,30 @@ public class IntraReqUnitTest {
         assertEquals("Failed to map " + IntraReq.class + "to JsonObject", expected, actual);
     }
 
+    @Test
+    public void mapRequestToOperationsJson() throws Exception {
+        IntraOp setKeyspace = Operations.setKeyspaceOp("compks");
+        IntraOp createKeyspace = Operations.createKsOp("compks", 1);
+
+        IntraReq req = new IntraReq();
+        req.add(setKeyspace);
+        req.add(createKeyspace);
+
+        JsonObject actual = req.toOperationsJson();
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonObject expected = new JsonObject();
+        expected.putArray("e", new JsonArray()
+            .addObject(new JsonObject(mapper.writeValueAsString(setKeyspace)))
+            .addObject(new JsonObject(mapper.writeValueAsString(createKeyspace))));
+
+        assertEquals("Failed to map " + IntraReq.class + "to operations JsonObject", expected, actual);
+
+        JsonObject op = actual.getArray("e").get(0);
+        op.getObject("op").putString("extra", "shared");
+        assertEquals("Operation parameters should not be copied", "shared", setKeyspace.getOp().get("extra"));
+    }
+
     @Test
     public void mapJsonToRequest() throws Exception {
         IntraOp setKeyspace = Operations.setKeyspaceOp("compks");
@@ -45,6 +45,7 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.usergrid.vx.client.IntraClient2;
+import org.usergrid.vx.handler.http.OperationsRequestHandler;
 import org.vertx.java.core.Vertx;
 
 import com.hazelcast.util.Base64;
@@ -573,6 +574,32 @@ public class IntraServiceITest {
     Assert.assertEquals(new Integer(10), res.getExceptionId());
   }
 
+  @Test
+  public void requestDeadlineTest() throws Exception {
+    // 0 means no deadline, as it does for the server default
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("system")); // 0
+    req.add(Operations.listKeyspacesOp()); // 1
+    req.setTimeout(0L);
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+    Assert.assertEquals(true, ((List<String>) res.getOpsRes().get("1")).contains("myks"));
+
+    req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")); // 0
+    req.add(Operations.setColumnFamilyOp("mycf")); // 1
+    req.add(Operations.setAutotimestampOp(true)); // 2
+    req.add(Operations.setOp("deadlinerow", "col1", "1")); // 3
+    req.add(Operations.createFilterOp("Sleepy", "groovy", "{ row -> Thread.sleep(3000) }")); // 4
+    req.add(Operations.filterModeOp("Sleepy", true)); // 5
+    req.add(Operations.sliceOp("deadlinerow", "col1", "col2", 10)); // 6
+    req.setTimeout(1500L);
+    res = ic2.sendBlocking(req);
+    Assert.assertEquals(OperationsRequestHandler.DEADLINE_EXCEEDED, res.getException());
+    Assert.assertNotNull(res.getExceptionId());
+  }
+
   @Test
   public void batchAcrossKeyspaces() throws Exception {
     List<Map> batch = new ArrayList<Map>();
@@ -621,7 +648,6 @@ public class IntraServiceITest {
   }
 
   @Test
-  @Ignore
   @RequiresColumnFamily(ksName = "myks", cfName = "mycf")
   public void preparedStatementTest() throws Exception {
     IntraReq req = new IntraReq();
@@ -630,24 +656,30 @@ public class IntraServiceITest {
                     .set("keyspace", "myks").set("columnfamily", "mycf"));
     IntraClient2 ic2 = new IntraClient2("localhost", 8080);
     IntraRes res = ic2.sendBlocking(req);
-    Assert.assertEquals("OK", res.getOpsRes().get(1));
+    Assert.assertEquals("OK", res.getOpsRes().get("1"));
 
     IntraReq r2 = new IntraReq();
     r2.add(Operations.prepare()); // must be the first op
+    r2.add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type"));
     r2.add(Operations.getOp(Operations.bindMarker(1), "preparedcol1").set("keyspace", "myks")
             .set("columnfamily", "mycf"));
-    IntraRes res2 = ic2.sendBlocking(req);
-    // Assert.assertEquals(0, res2.getOpsRes().get(0));
+    IntraRes res2 = ic2.sendBlocking(r2);
     Assert.assertEquals(1, res2.getOpsRes().size());
-    Integer preparedId = (Integer) res2.getOpsRes().get(0);
+    Integer preparedId = (Integer) res2.getOpsRes().get("0");
 
     IntraReq req3 = new IntraReq();
     Map m = new HashMap();
     m.put(new Integer(1), "preparedrow1");
     req3.add(Operations.executePrepared(preparedId, m));
-    IntraRes res3 = ic2.sendBlocking(req);
-    List<Map> x = (List<Map>) res3.getOpsRes().get(0);
-    Assert.assertEquals("preparedvalue1", ByteBufferUtil.string((ByteBuffer) x.get(0).get("value")));
+    IntraRes res3 = new IntraClient2("localhost", 8080).sendBlocking(req3);
+    Assert.assertNull(res3.getException());
+    List<Map> x = (List<Map>) res3.getOpsRes().get("1");
+    Assert.assertEquals("preparedvalue1", x.get(0).get("value"));
+
+    IntraReq unknown = new IntraReq();
+    unknown.add(Operations.executePrepared(-1, m));
+    IntraRes res4 = new IntraClient2("localhost", 8080).sendBlocking(unknown);
+    Assert.assertNotNull(res4.getException());
 
   }
 
@@ -685,7 +717,6 @@ public class IntraServiceITest {
   }
 
   @Test
-  @Ignore
   @RequiresColumnFamily(ksName = "myks", cfName = "mycf")
   public void sliceNamesTest() throws Exception {
     IntraReq req = new IntraReq();
@@ -702,10 +733,27 @@ public class IntraServiceITest {
             .add(Operations.sliceByNames("slicename", Arrays.asList(new Object[] { "ed", "pete" })));
     IntraClient2 ic2 = new IntraClient2("localhost", 8080);
     IntraRes res = ic2.sendBlocking(req);
-    List<Map> x = (List<Map>) res.getOpsRes().get(7);
+    List<Map> x = (List<Map>) res.getOpsRes().get("7");
+    Assert.assertEquals(2, x.size());
     Assert.assertEquals("ed", x.get(0).get("name"));
     Assert.assertEquals("FL", x.get(1).get("value"));
 
+    req = new IntraReq();
+    req.add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type"))
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type"))
+            .add(Operations.setKeyspaceOp("myks"))
+            .add(Operations.setColumnFamilyOp("mycf"))
+            .add(Operations.setOp("slicename2", "pete", "TX"))
+            // 4
+            .add(Operations.multiSliceByNames(Arrays.asList("slicename", "slicename2"),
+                    Arrays.asList(new Object[] { "bob", "pete" })));
+    res = ic2.sendBlocking(req);
+    Map<String, List<Map>> byKey = (Map<String, List<Map>>) res.getOpsRes().get("5");
+    Assert.assertEquals(2, byKey.get("slicename").size());
+    Assert.assertEquals("NY", byKey.get("slicename").get(0).get("value"));
+    Assert.assertEquals(1, byKey.get("slicename2").size());
+    Assert.assertEquals("TX", byKey.get("slicename2").get(0).get("value"));
+
   }
 
   @Test
@@ -731,4 +779,304 @@ public class IntraServiceITest {
     Assert.assertEquals(2147483658L, results.get(0).get("value"));
     Assert.assertTrue( (Long) results.get(0).get("value") > Integer.MAX_VALUE );
   }
-}
\ No newline at end of file
+
+  @Test
+  @RequiresColumnFamily(ksName = "myks", cfName = "mycountercf", isCounter = true)
+  public void coalescedWrites() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "mycountercf", "value", "LongType")) // 3
+            .add(Operations.setOp("batchrow1", "col1", "a")) // 4
+            .add(Operations.setOp("batchrow1", "col2", "b")) // 5
+            .add(Operations.setOp("batchrow2", "col1", "c")) // 6
+            .add(Operations.counter("batchcount", "hits", 2L).set("columnfamily", "mycountercf")) // 7
+            .add(Operations.counter("batchcount", "hits", 3L).set("columnfamily", "mycountercf")) // 8
+            .add(Operations.setOp("batchrow1", "col1", "d")) // 9
+            .add(Operations.sliceOp("batchrow1", "col1", "col3", 10)) // 10
+            .add(Operations.getOp("batchrow2", "col1")) // 11
+            .add(Operations.getOp("batchcount", "hits").set("columnfamily", "mycountercf")); // 12
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+    for (int i = 4; i <= 9; i++) {
+      Assert.assertEquals("OK", res.getOpsRes().get(String.valueOf(i)));
+    }
+    List<Map> x = (List<Map>) res.getOpsRes().get("10");
+    Assert.assertEquals(2, x.size());
+    Assert.assertEquals("d", x.get(0).get("value"));
+    Assert.assertEquals("b", x.get(1).get("value"));
+    x = (List<Map>) res.getOpsRes().get("11");
+    Assert.assertEquals("c", x.get(0).get("value"));
+    x = (List<Map>) res.getOpsRes().get("12");
+    Assert.assertEquals(5, x.get(0).get("value"));
+  }
+
+  @Test
+  @RequiresColumnFamily(ksName = "myks", cfName = "mycountercf", isCounter = true)
+  public void coalescedCounterMatchesSingleCounter() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycountercf")) // 1
+            .add(Operations.assumeOp("myks", "mycountercf", "value", "LongType")) // 2
+            .add(Operations.counter(4242, "hits", 2L)) // 3, alone
+            .add(Operations.getOp(4242, "hits")) // 4
+            .add(Operations.counter(4242, "hits", 3L)) // 5, coalesced with 6
+            .add(Operations.counter(4242, "misses", 1L)) // 6
+            .add(Operations.getOp(4242, "hits")); // 7
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+    List<Map> x = (List<Map>) res.getOpsRes().get("4");
+    Assert.assertEquals(2, x.get(0).get("value"));
+    x = (List<Map>) res.getOpsRes().get("7");
+    Assert.assertEquals(5, x.get(0).get("value"));
+  }
+
+  @Test
+  public void multiRowReads() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type")) // 3
+            .add(Operations.setOp("multi1", "a", "1")) // 4
+            .add(Operations.setOp("multi1", "b", "2")) // 5
+            .add(Operations.setOp("multi2", "a", "3")) // 6
+            .add(Operations.multiGetOp(Arrays.asList("multi1", "multi2", "multi3"), "a")) // 7
+            .add(Operations.multiSliceOp(Arrays.asList("multi2", "multi1"), "a", "z", 10)); // 8
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+
+    Map<String, List<Map>> byKey = (Map<String, List<Map>>) res.getOpsRes().get("7");
+    Assert.assertEquals(Arrays.asList("multi1", "multi2", "multi3"), new ArrayList(byKey.keySet()));
+    Assert.assertEquals("1", byKey.get("multi1").get(0).get("value"));
+    Assert.assertEquals("3", byKey.get("multi2").get(0).get("value"));
+    Assert.assertEquals(0, byKey.get("multi3").size());
+
+    byKey = (Map<String, List<Map>>) res.getOpsRes().get("8");
+    Assert.assertEquals(Arrays.asList("multi2", "multi1"), new ArrayList(byKey.keySet()));
+    Assert.assertEquals(2, byKey.get("multi1").size());
+    Assert.assertEquals("b", byKey.get("multi1").get(1).get("name"));
+    Assert.assertEquals(1, byKey.get("multi2").size());
+  }
+
+  @Test
+  @RequiresColumnFamily(ksName = "myks", cfName = "multiresultcf")
+  public void multiRowReadsOfTypedKeysInResultMode() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "rowkey", "Int32Type")) // 2
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 3
+            .add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type")) // 4
+            .add(Operations.setOp(9001, "a", "1")) // 5
+            .add(Operations.setOp(9002, "a", "2")) // 6
+            .add(Operations.resultMode("myks", "multiresultcf", true)) // 7
+            .add(Operations.multiGetOp(Arrays.asList(9001, 9002), "a")); // 8
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+    Map<String, List<Map>> byKey = (Map<String, List<Map>>) res.getOpsRes().get("8");
+    Assert.assertEquals(Arrays.asList("9001", "9002"), new ArrayList(byKey.keySet()));
+    Assert.assertEquals("2", byKey.get("9002").get(0).get("value"));
+
+    req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("multiresultcf")) // 1
+            .add(Operations.assumeOp("myks", "multiresultcf", "column", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "multiresultcf", "value", "UTF8Type")) // 3
+            .add(Operations.getOp(9001, "a")) // 4
+            .add(Operations.getOp(9002, "a")); // 5
+    res = ic2.sendBlocking(req);
+    Assert.assertEquals("1", ((List<Map>) res.getOpsRes().get("4")).get(0).get("value"));
+    Assert.assertEquals("2", ((List<Map>) res.getOpsRes().get("5")).get(0).get("value"));
+  }
+
+  @Test
+  public void pagedSlice() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type")) // 3
+            .add(Operations.setOp("paged", "a", "1")) // 4
+            .add(Operations.setOp("paged", "b", "2")) // 5
+            .add(Operations.setOp("paged", "c", "3")) // 6
+            .add(Operations.setOp("paged", "d", "4")) // 7
+            .add(Operations.setOp("paged", "e", "5")) // 8
+            .add(Operations.sliceOp("paged", "a", "z", 3)) // 9
+            .add(Operations.pagedSliceOp("paged", "a", "z", 2)); // 10
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+    Assert.assertEquals(3, ((List) res.getOpsRes().get("9")).size());
+
+    List<String> names = new ArrayList<String>();
+    Map page = (Map) res.getOpsRes().get("10");
+    int pages = 1;
+    while (true) {
+      for (Map column : (List<Map>) page.get(Operations.COLUMNS)) {
+        names.add((String) column.get("name"));
+      }
+      String cursor = (String) page.get(Operations.CURSOR);
+      if (cursor == null) {
+        break;
+      }
+      req = new IntraReq();
+      req.add(Operations.setKeyspaceOp("myks")) // 0
+              .add(Operations.setColumnFamilyOp("mycf")) // 1
+              .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 2
+              .add(Operations.nextSliceOp("paged", cursor, "z", 2)); // 3
+      res = new IntraClient2("localhost", 8080).sendBlocking(req);
+      Assert.assertNull(res.getException());
+      page = (Map) res.getOpsRes().get("3");
+      pages++;
+    }
+    Assert.assertEquals(Arrays.asList("a", "b", "c", "d", "e"), names);
+    Assert.assertEquals(3, pages);
+  }
+
+  @Test
+  public void streamedResponse() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type")) // 3
+            .add(Operations.setOp("streamed", "a", "1")) // 4
+            .add(Operations.setOp("streamed", "b", "2")) // 5
+            .add(Operations.getOp("streamed", "a")) // 6
+            .add(Operations.setOp("streamed", "c", Operations.ref(6, "value"))) // 7
+            .add(Operations.sliceOp("streamed", "a", "z", 10)) // 8
+            .add(Operations.getOp("streamed", "c")); // 9
+
+    IntraRes res = new IntraClient2("localhost", 8080).sendBlocking(req);
+    Assert.assertNull(res.getException());
+
+    IntraClient2 streaming = new IntraClient2("localhost", 8080);
+    streaming.setTransport(IntraClient2.Transport.JSON_STREAM);
+    IntraRes streamed = streaming.sendBlocking(req);
+    Assert.assertNull(streamed.getException());
+    Assert.assertEquals(res.getOpsRes(), streamed.getOpsRes());
+    Assert.assertEquals(3, ((List) streamed.getOpsRes().get("8")).size());
+    Assert.assertEquals("1", ((List<Map>) streamed.getOpsRes().get("9")).get(0).get("value"));
+  }
+
+  @Test
+  public void streamedResponseLargerThanTheWriteQueue() throws Exception {
+    char[] filler = new char[500];
+    Arrays.fill(filler, 'x');
+    List<Map> batch = new ArrayList<Map>();
+    for (int i = 0; i < 400; i++) {
+      Map row = new HashMap();
+      row.put("keyspace", "myks");
+      row.put("columnfamily", "mycf");
+      row.put("rowkey", "backpressure");
+      row.put("name", String.format("c%03d", i));
+      row.put("value", new String(filler));
+      batch.add(row);
+    }
+    IntraReq req = new IntraReq();
+    req.add(Operations.setAutotimestampOp(true)).add(Operations.batchSetOp(batch));
+    Assert.assertNull(new IntraClient2("localhost", 8080).sendBlocking(req).getException());
+
+    // the first slice fills the write queue, the operations after the barrier wait for it to drain
+    req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type")) // 3
+            .add(Operations.sliceOp("backpressure", "c000", "c999", 1000)) // 4
+            .add(Operations.setKeyspaceOp("myks")) // 5
+            .add(Operations.sliceOp("backpressure", "c000", "c999", 1000)); // 6
+    IntraClient2 streaming = new IntraClient2("localhost", 8080);
+    streaming.setTransport(IntraClient2.Transport.JSON_STREAM);
+    IntraRes streamed = streaming.sendBlocking(req);
+    Assert.assertNull(streamed.getException());
+    Assert.assertEquals(400, ((List) streamed.getOpsRes().get("4")).size());
+    Assert.assertEquals("OK", streamed.getOpsRes().get("5"));
+    Assert.assertEquals(400, ((List) streamed.getOpsRes().get("6")).size());
+  }
+
+  @Test
+  public void reversedSlice() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type")) // 3
+            .add(Operations.setOp("reversed", "a", "1")) // 4
+            .add(Operations.setOp("reversed", "b", "2")) // 5
+            .add(Operations.setOp("reversed", "c", "3")) // 6
+            .add(Operations.sliceOp("reversed", "z", "a", 2, true)) // 7
+            .add(Operations.pagedSliceOp("reversed", "z", "a", 2).set(Operations.REVERSED, true)); // 8
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+    List<Map> columns = (List<Map>) res.getOpsRes().get("7");
+    Assert.assertEquals(2, columns.size());
+    Assert.assertEquals("c", columns.get(0).get("name"));
+    Assert.assertEquals("b", columns.get(1).get("name"));
+
+    String cursor = (String) ((Map) res.getOpsRes().get("8")).get(Operations.CURSOR);
+    req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("mycf")) // 1
+            .add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type")) // 2
+            .add(Operations.nextSliceOp("reversed", cursor, "a", 2)); // 3
+    res = ic2.sendBlocking(req);
+    columns = (List<Map>) ((Map) res.getOpsRes().get("3")).get(Operations.COLUMNS);
+    Assert.assertEquals(1, columns.size());
+    Assert.assertEquals("a", columns.get(0).get("name"));
+  }
+
+  @Test
+  @RequiresColumnFamily(ksName = "myks", cfName = "rangecf")
+  public void rangeSlice() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")) // 0
+            .add(Operations.setColumnFamilyOp("rangecf")) // 1
+            .add(Operations.assumeOp("myks", "rangecf", "rowkey", "UTF8Type")) // 2
+            .add(Operations.assumeOp("myks", "rangecf", "column", "UTF8Type")) // 3
+            .add(Operations.assumeOp("myks", "rangecf", "value", "UTF8Type")); // 4
+    // more rows than a single page of the scan
+    for (int i = 0; i < 120; i++) {
+      req.add(Operations.setOp("range" + i, "a", "1"))
+              .add(Operations.setOp("range" + i, "b", "2"))
+              .add(Operations.setOp("range" + i, "c", "3"));
+    }
+    int ops = req.getE().size();
+    req.add(Operations.rangeSliceOp(null, null, "c", "a", 2, 500).set(Operations.REVERSED, true))
+            .add(Operations.rangeSliceOp(null, null, "a", "z", 10, 5));
+
+    IntraClient2 ic2 = new IntraClient2("localhost", 8080);
+    IntraRes res = ic2.sendBlocking(req);
+    Assert.assertNull(res.getException());
+
+    List<Map> rows = (List<Map>) res.getOpsRes().get(String.valueOf(ops));
+    Assert.assertEquals(120, rows.size());
+    Set<Object> keys = new HashSet<Object>();
+    for (Map row : rows) {
+      keys.add(row.get(Operations.ROWKEY));
+      List<Map> columns = (List<Map>) row.get(Operations.COLUMNS);
+      Assert.assertEquals(2, columns.size());
+      Assert.assertEquals("c", columns.get(0).get("name"));
+      Assert.assertEquals("b", columns.get(1).get("name"));
+    }
+    Assert.assertEquals(120, keys.size());
+    Assert.assertTrue(keys.contains("range7"));
+
+    rows = (List<Map>) res.getOpsRes().get(String.valueOf(ops + 1));
+    Assert.assertEquals(5, rows.size());
+    Assert.assertEquals(3, ((List) rows.get(0).get(Operations.COLUMNS)).size());
+  }
+}
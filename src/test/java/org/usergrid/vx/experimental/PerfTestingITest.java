@@ -114,6 +114,27 @@ public class PerfTestingITest {
 		System.out.println(end - start);
 	}
 	
+	/* 500 SETs per request, written as one coalesced mutation */
+	@Test
+	@RequiresColumnFamily(ksName = "myks", cfName = "mycf")
+	public void coalescedWriteThroughput() throws Exception {
+		final int requests = 200;
+		final int setsPerRequest = 500;
+		IntraClient2 ic = new IntraClient2("localhost", 8080);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < requests; ++i) {
+			IntraReq req = new IntraReq();
+			req.add(Operations.setKeyspaceOp("myks"));
+			req.add(Operations.setColumnFamilyOp("mycf"));
+			for (int j = 0; j < setsPerRequest; j++) {
+				req.add(Operations.setOp("row" + (j % 50), "col" + j, "value" + j));
+			}
+			ic.sendBlocking(req);
+		}
+		long end = System.currentTimeMillis();
+		System.out.println((requests * setsPerRequest) + " coalesced writes in " + (end - start) + " ms");
+	}
+
 	@Test
 	@RequiresColumnFamily(ksName = "myks", cfName = "mycf")
 	public void blitz() throws Exception {
@@ -424,6 +424,79 @@ public class RawJsonITest {
     assertJSONEquals("Failed to time out long running operation", expectedResponse, actualResponse);
   }
 
+  @Test
+  public void reportMetrics() throws Exception {
+    // the column has to exist for its read to be decoded
+    submitRequest(loadJSON("set_column.json"));
+    submitRequest(loadJSON("get_column.json"));
+
+    JsonObject metrics = metrics();
+    Assert.assertTrue(metrics.getObject("Requests.Request.json").getLong("count") > 0);
+    Assert.assertTrue(metrics.getObject("Operations.Execution.get").getLong("count") > 0);
+    Assert.assertTrue(metrics.getObject("Operations.Storage.get").getLong("count") > 0);
+    Assert.assertTrue(metrics.getObject("Operations.Decode.get").getLong("count") > 0);
+    Assert.assertNotNull(metrics.getObject("Operations.DispatchWait.setkeyspace"));
+  }
+
+  @Test
+  public void failedOperationReleasesItsSlot() throws Exception {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")); // 0
+    req.add(Operations.setColumnFamilyOp("mycf")); // 1
+    // op 0 answers "OK", so resolving the reference fails while dispatching op 2
+    req.add(Operations.setOp("leakrow", "col", Operations.ref(0, "value"))); // 2
+    JsonObject response = new JsonObject(submitRequest(new ObjectMapper().writeValueAsString(req)));
+    Assert.assertEquals("2", response.getString("exceptionId"));
+    Assert.assertEquals(0, metrics().getObject("AdmissionController.RunningRequests").getInteger("value").intValue());
+  }
+
+  @Test
+  public void rejectsMalformedTimeoutHeader() throws Exception {
+    final String json = loadJSON("get_column.json");
+    final int[] status = new int[1];
+    final CountDownLatch doneSignal = new CountDownLatch(1);
+    HttpClientRequest req = httpClient.request("POST", "/intravert/intrareq-json", new Handler<HttpClientResponse>() {
+      @Override
+      public void handle(HttpClientResponse resp) {
+        status[0] = resp.statusCode();
+        resp.endHandler(new Handler<Void>() {
+          @Override
+          public void handle(Void d) {
+            doneSignal.countDown();
+          }
+        });
+      }
+    });
+    req.putHeader("X-Intravert-Timeout", "soon");
+    req.putHeader(CONTENT_LENGTH, String.valueOf(json.length()));
+    req.write(json);
+    req.end();
+    doneSignal.await();
+    Assert.assertEquals(400, status[0]);
+  }
+
+  /* read with a client of its own, a third request on the keep-alive connection can hang */
+  private JsonObject metrics() throws Exception {
+    final Buffer data = new Buffer();
+    final CountDownLatch doneSignal = new CountDownLatch(1);
+    HttpClient metricsClient = vertx.createHttpClient().setHost("localhost").setPort(8080);
+    metricsClient.getNow("/intravert/metrics", new Handler<HttpClientResponse>() {
+      @Override
+      public void handle(HttpClientResponse resp) {
+        resp.bodyHandler(new Handler<Buffer>() {
+          @Override
+          public void handle(Buffer body) {
+            data.appendBuffer(body);
+            doneSignal.countDown();
+          }
+        });
+      }
+    });
+    doneSignal.await();
+    metricsClient.close();
+    return new JsonObject(data.toString());
+  }
+
     @Test
     
     public void handleBadRequest() throws Exception {
@@ -0,0 +1,152 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.experimental;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.usergrid.vx.client.IntraClient2;
+import org.usergrid.vx.client.IntraClient2.Transport;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.platform.PlatformLocator;
+
+/**
+ * Round trips over the Smile transport, and checks that it takes fewer
+ * bytes on the wire than JSON for the same request and response.
+ */
+@RunWith(CassandraRunner.class)
+@RequiresKeyspace(ksName = "myks")
+@RequiresColumnFamily(ksName = "myks", cfName = "mycf")
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class TransportPerfITest {
+
+  @Test
+  public void smileRoundTrip() throws Exception {
+    IntraClient2 ic = new IntraClient2("localhost", 8080);
+    ic.setTransport(Transport.SMILE);
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks"));
+    req.add(Operations.setColumnFamilyOp("mycf"));
+    req.add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type"));
+    req.add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type"));
+    req.add(Operations.setOp("smilerow", "col1", "smile"));
+    req.add(Operations.getOp("smilerow", "col1"));
+    IntraRes res = ic.sendBlocking(req);
+    Assert.assertEquals("OK", res.getOpsRes().get("4"));
+    List<Map> x = (List<Map>) res.getOpsRes().get("5");
+    Assert.assertEquals("col1", x.get(0).get("name"));
+    Assert.assertEquals("smile", x.get(0).get("value"));
+  }
+
+  @Test
+  public void smileBlobRoundTrip() throws Exception {
+    byte[] blob = new byte[100 * 1024];
+    for (int i = 0; i < blob.length; i++) {
+      blob[i] = (byte) i;
+    }
+    IntraClient2 ic = new IntraClient2("localhost", 8080);
+    ic.setTransport(Transport.SMILE);
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks"));
+    req.add(Operations.setColumnFamilyOp("mycf"));
+    req.add(Operations.setOp("blobrow", "blob", blob));
+    req.add(Operations.getOp("blobrow", "blob"));
+    IntraRes res = ic.sendBlocking(req);
+    Assert.assertEquals("OK", res.getOpsRes().get("2"));
+    List<Map> x = (List<Map>) res.getOpsRes().get("3");
+    Assert.assertArrayEquals(blob, (byte[]) x.get(0).get("value"));
+  }
+
+  @Test
+  public void smileIsSmallerOnTheWire() throws Exception {
+    IntraReq req = sliceRequest();
+    IntraClient2 ic = new IntraClient2("localhost", 8080);
+    ic.sendBlocking(loadRequest());
+
+    ObjectMapper json = new ObjectMapper();
+    ObjectMapper smile = new ObjectMapper(new SmileFactory());
+    byte[] jsonRequest = json.writeValueAsBytes(req);
+    byte[] smileRequest = smile.writeValueAsBytes(req);
+    Assert.assertTrue(smileRequest.length < jsonRequest.length);
+
+    Vertx vertx = PlatformLocator.factory.createPlatformManager().vertx();
+    // a client per request, a reused keep-alive client can hang
+    Buffer jsonResponse = post(vertx, "/intravert/intrareq-json", jsonRequest);
+    Buffer smileResponse = post(vertx, "/intravert/intrareq-smile", smileRequest);
+    IntraRes res = smile.readValue(smileResponse.getBytes(), IntraRes.class);
+    Assert.assertEquals(100, ((List) res.getOpsRes().get("4")).size());
+    Assert.assertTrue(smileResponse.length() < jsonResponse.length());
+  }
+
+  private IntraReq loadRequest() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks"));
+    req.add(Operations.setColumnFamilyOp("mycf"));
+    for (int i = 0; i < 100; i++) {
+      req.add(Operations.setOp("perfrow", "col" + i, "value" + i));
+    }
+    return req;
+  }
+
+  private IntraReq sliceRequest() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks"));
+    req.add(Operations.setColumnFamilyOp("mycf"));
+    req.add(Operations.assumeOp("myks", "mycf", "value", "UTF8Type"));
+    req.add(Operations.assumeOp("myks", "mycf", "column", "UTF8Type"));
+    req.add(Operations.sliceOp("perfrow", "col", "colz", 100));
+    return req;
+  }
+
+  private Buffer post(Vertx vertx, String uri, byte[] body) throws InterruptedException {
+    HttpClient client = vertx.createHttpClient().setHost("localhost").setPort(8080);
+    final Buffer data = new Buffer();
+    final CountDownLatch doneSignal = new CountDownLatch(1);
+    HttpClientRequest req = client.request("POST", uri, new Handler<HttpClientResponse>() {
+      @Override
+      public void handle(HttpClientResponse resp) {
+        resp.dataHandler(new Handler<Buffer>() {
+          @Override
+          public void handle(Buffer buffer) {
+            data.appendBuffer(buffer);
+          }
+        });
+        resp.endHandler(new Handler<Void>() {
+          @Override
+          public void handle(Void v) {
+            doneSignal.countDown();
+          }
+        });
+      }
+    });
+    req.putHeader("content-length", String.valueOf(body.length));
+    req.end(new Buffer(body));
+    doneSignal.await();
+    client.close();
+    return data;
+  }
+}
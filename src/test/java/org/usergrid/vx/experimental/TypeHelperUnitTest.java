@@ -0,0 +1,48 @@
+/*
+ *   Copyright 2013 Nate McCall and Edward Capriolo
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+*/
+package org.usergrid.vx.experimental;
+
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TypeHelperUnitTest {
+
+  @Test
+  public void typesAreParsedOnce() {
+    assertSame(UTF8Type.instance, TypeHelper.getType("UTF8Type"));
+    String composite = "CompositeType(UTF8Type,Int32Type)";
+    assertTrue(TypeHelper.getType(composite) instanceof CompositeType);
+    assertSame(TypeHelper.getType(composite), TypeHelper.getType(composite));
+  }
+
+  @Test
+  public void composeUsesCachedType() {
+    assertEquals("hello", TypeHelper.getTyped("UTF8Type", ByteBufferUtil.bytes("hello")));
+    assertEquals(5, TypeHelper.getTyped("Int32Type", Int32Type.instance.decompose(5)));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void unknownType() {
+    TypeHelper.getType("NoSuchType");
+  }
+}
@@ -0,0 +1,106 @@
+package org.usergrid.vx.handler.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.usergrid.vx.experimental.IntraReq;
+import org.usergrid.vx.experimental.Operations;
+
+public class OperationDependenciesUnitTest {
+
+  @Test
+  public void independentGetsOnlyWaitOnTheBarrier() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")); // 0
+    req.add(Operations.getOp("rowa", "col1")); // 1
+    req.add(Operations.getOp("rowb", "col1")); // 2
+    req.add(Operations.getOp("rowa", "col2")); // 3
+
+    List<Set<Integer>> deps = OperationDependencies.analyze(req.toOperationsJson().getArray("e"));
+
+    assertEquals(ids(), deps.get(0));
+    assertEquals(ids(0), deps.get(1));
+    assertEquals(ids(0), deps.get(2));
+    assertEquals(ids(0), deps.get(3));
+  }
+
+  @Test
+  public void writesAreOrderedWithAccessesToTheSameRow() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setOp("rowa", "col1", "v1")); // 0
+    req.add(Operations.setOp("rowb", "col1", "v1")); // 1
+    req.add(Operations.getOp("rowa", "col1")); // 2
+    req.add(Operations.setOp("rowa", "col2", "v2")); // 3
+
+    List<Set<Integer>> deps = OperationDependencies.analyze(req.toOperationsJson().getArray("e"));
+
+    assertEquals(ids(), deps.get(0));
+    assertEquals(ids(), deps.get(1));
+    assertEquals(ids(0), deps.get(2));
+    assertEquals(ids(0, 2), deps.get(3));
+  }
+
+  @Test
+  public void multiRowReadsWaitOnWritesToAnyOfTheirRows() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setOp("rowa", "col1", "v1")); // 0
+    req.add(Operations.setOp("rowc", "col1", "v1")); // 1
+    req.add(Operations.multiGetOp(Arrays.asList("rowb", "rowc"), "col1")); // 2
+
+    List<Set<Integer>> deps = OperationDependencies.analyze(req.toOperationsJson().getArray("e"));
+
+    assertEquals(ids(1), deps.get(2));
+  }
+
+  @Test
+  public void statefulOperationsAreBarriers() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.getOp("rowa", "col1")); // 0
+    req.add(Operations.getOp("rowb", "col1")); // 1
+    req.add(Operations.consistencyOp("ALL")); // 2
+    req.add(Operations.getOp("rowc", "col1")); // 3
+
+    List<Set<Integer>> deps = OperationDependencies.analyze(req.toOperationsJson().getArray("e"));
+
+    assertEquals(ids(), deps.get(0));
+    assertEquals(ids(), deps.get(1));
+    assertEquals(ids(0, 1), deps.get(2));
+    assertEquals(ids(2), deps.get(3));
+  }
+
+  @Test
+  public void referencesAreDependencies() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.getOp("rowa", "col1")); // 0
+    req.add(Operations.setOp("rowb", "col2", Operations.ref(0, "value"))); // 1
+    req.add(Operations.setOp(Operations.ref(0, "value"), "col2", "v")); // 2
+
+    List<Set<Integer>> deps = OperationDependencies.analyze(req.toOperationsJson().getArray("e"));
+
+    assertEquals(ids(0), deps.get(1));
+    assertEquals(ids(0, 1), deps.get(2));
+  }
+
+  @Test
+  public void binaryRowKeysCompareByContent() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setOp(new byte[] { 1, 2, 3 }, "col1", "v1")); // 0
+    req.add(Operations.getOp(new byte[] { 1, 2, 3 }, "col1")); // 1
+    req.add(Operations.getOp(new byte[] { 1, 2, 4 }, "col1")); // 2
+
+    List<Set<Integer>> deps = OperationDependencies.analyze(req.toOperationsJson().getArray("e"));
+
+    assertEquals(ids(0), deps.get(1));
+    assertEquals(ids(), deps.get(2));
+  }
+
+  private static Set<Integer> ids(Integer... ids) {
+    return new TreeSet<Integer>(ids.length == 0 ? Collections.<Integer>emptyList() : Arrays.asList(ids));
+  }
+}
@@ -0,0 +1,90 @@
+package org.usergrid.vx.handler.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.usergrid.vx.experimental.IntraReq;
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+public class PreparedRequestsUnitTest {
+
+  @Test
+  public void bindsMarkersAndSharesTheRest() {
+    PreparedRequests prepared = new PreparedRequests(10);
+    IntraReq req = new IntraReq();
+    req.add(Operations.prepare());
+    req.add(Operations.setKeyspaceOp("myks"));
+    req.add(Operations.getOp(Operations.bindMarker(1), "col1"));
+    req.add(Operations.multiGetOp(Arrays.asList("rowa", Operations.bindMarker(2)), "col1"));
+    JsonArray operations = operations(req);
+    assertTrue(PreparedRequests.isPrepare(operations));
+    int id = prepared.prepare(operations);
+
+    JsonArray bound = prepared.bind(operations(execute(id, 1, "rowb", 2, "rowc")));
+    assertEquals(3, bound.size());
+    // operations without markers are shared with the template
+    ((JsonObject) operations.get(1)).getObject(Operations.OP).putString("probe", "shared");
+    assertEquals("shared", ((JsonObject) bound.get(0)).getObject(Operations.OP).getString("probe"));
+    assertEquals("rowb", ((JsonObject) bound.get(1)).getObject(Operations.OP).getString(Operations.ROWKEY));
+    assertEquals(new JsonArray().add("rowa").add("rowc"),
+            ((JsonObject) bound.get(2)).getObject(Operations.OP).getArray(Operations.ROWKEYS));
+
+    // the template itself is left alone
+    assertTrue(((JsonObject) operations.get(2)).getObject(Operations.OP).getField(Operations.ROWKEY) instanceof JsonObject);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unboundMarkerFails() {
+    PreparedRequests prepared = new PreparedRequests(10);
+    IntraReq req = new IntraReq();
+    req.add(Operations.prepare());
+    req.add(Operations.getOp(Operations.bindMarker(1), "col1"));
+    int id = prepared.prepare(operations(req));
+    prepared.bind(operations(execute(id, 2, "rowb", 3, "rowc")));
+  }
+
+  @Test
+  public void leastRecentlyUsedTemplatesAreEvicted() {
+    PreparedRequests prepared = new PreparedRequests(1);
+    IntraReq req = new IntraReq();
+    req.add(Operations.prepare());
+    req.add(Operations.setKeyspaceOp("myks"));
+    int first = prepared.prepare(operations(req));
+    int second = prepared.prepare(operations(req));
+    assertFalse(first == second);
+    assertEquals(1, prepared.bind(operations(execute(second, 1, "a", 2, "b"))).size());
+    try {
+      prepared.bind(operations(execute(first, 1, "a", 2, "b")));
+      throw new AssertionError("evicted template was executed");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownTypesAreRejected() {
+    JsonArray operations = new JsonArray()
+            .addObject(new JsonObject().putString(Operations.TYPE, "PREPARE").putObject(Operations.OP, new JsonObject()))
+            .addObject(new JsonObject().putString(Operations.TYPE, "NOSUCHOP").putObject(Operations.OP, new JsonObject()));
+    new PreparedRequests(10).prepare(operations);
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static IntraReq execute(int id, int mark1, String value1, int mark2, String value2) {
+    Map bind = new HashMap();
+    bind.put(String.valueOf(mark1), value1);
+    bind.put(String.valueOf(mark2), value2);
+    return new IntraReq().add(Operations.executePrepared(id, bind));
+  }
+
+  private static JsonArray operations(IntraReq req) {
+    return req.toOperationsJson().getArray(Operations.E);
+  }
+}
@@ -0,0 +1,65 @@
+package org.usergrid.vx.handler.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+public class RequestStateUnitTest {
+
+  @Test
+  public void appliesDeltasWithoutChangingSnapshots() {
+    JsonArray components = new JsonArray().add("name").add("value");
+    RequestState state = new RequestState(new JsonObject()
+            .putArray("components", components)
+            .putString("currentKeyspace", "ks1"));
+    JsonObject first = state.snapshot();
+
+    state.apply(new JsonObject().putString("currentKeyspace", "ks2").putBoolean("autotimestamp", true));
+    JsonObject second = state.snapshot();
+
+    assertEquals("ks1", first.getString("currentKeyspace"));
+    assertNull(first.getBoolean("autotimestamp"));
+    assertEquals("ks2", second.getString("currentKeyspace"));
+    assertEquals(true, second.getBoolean("autotimestamp"));
+    // untouched fields are shared, not copied
+    components.add("timestamp");
+    assertEquals(3, second.getArray("components").size());
+  }
+
+  @Test
+  public void mergesSectionsAndRemovesNulls() {
+    RequestState state = new RequestState(new JsonObject()
+            .putObject("meta", new JsonObject().putObject("ks cf value", new JsonObject().putString("clazz", "UTF8Type")))
+            .putString("currentFilter", "f"));
+    JsonObject first = state.snapshot();
+
+    state.apply(new JsonObject()
+            .putObject("meta", new JsonObject().putObject("ks cf column", new JsonObject().putString("clazz", "Int32Type")))
+            .putString("currentFilter", null));
+    JsonObject second = state.snapshot();
+
+    assertEquals("UTF8Type", second.getObject("meta").getObject("ks cf value").getString("clazz"));
+    assertEquals("Int32Type", second.getObject("meta").getObject("ks cf column").getString("clazz"));
+    assertFalse(second.getFieldNames().contains("currentFilter"));
+    assertNull(first.getObject("meta").getObject("ks cf column"));
+    assertEquals("f", first.getString("currentFilter"));
+  }
+
+  @Test
+  public void replacesEntriesOfSectionsWhole() {
+    RequestState state = new RequestState(new JsonObject()
+            .putObject("meta", new JsonObject().putObject("ks cf value", new JsonObject()
+                    .putString("clazz", "CompositeType").putArray("components", new JsonArray().add("UTF8Type")))));
+
+    state.apply(new JsonObject()
+            .putObject("meta", new JsonObject().putObject("ks cf value", new JsonObject().putString("clazz", "UTF8Type"))));
+
+    JsonObject value = state.snapshot().getObject("meta").getObject("ks cf value");
+    assertEquals("UTF8Type", value.getString("clazz"));
+    assertFalse(value.getFieldNames().contains("components"));
+  }
+}
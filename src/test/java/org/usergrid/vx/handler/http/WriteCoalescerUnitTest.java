@@ -0,0 +1,36 @@
+package org.usergrid.vx.handler.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.usergrid.vx.experimental.IntraReq;
+import org.usergrid.vx.experimental.Operations;
+
+public class WriteCoalescerUnitTest {
+
+  @Test
+  public void groupsAdjacentWrites() {
+    IntraReq req = new IntraReq();
+    req.add(Operations.setKeyspaceOp("myks")); // 0
+    req.add(Operations.setOp("rowa", "col1", "v1")); // 1
+    req.add(Operations.counter("rowb", "col1", 1L)); // 2
+    req.add(Operations.setOp("rowa", "col2", "v2")); // 3
+    req.add(Operations.getOp("rowa", "col1")); // 4
+    req.add(Operations.setOp("rowc", "col1", "v3")); // 5
+    req.add(Operations.setOp("rowc", "col2", Operations.ref(4, "value"))); // 6
+    req.add(Operations.setOp("rowc", "col3", "v4")); // 7
+
+    List<List<Integer>> groups = WriteCoalescer.group(req.toOperationsJson().getArray("e"));
+
+    assertEquals(Arrays.asList(
+        Arrays.asList(0),
+        Arrays.asList(1, 2, 3),
+        Arrays.asList(4),
+        Arrays.asList(5),
+        Arrays.asList(6),
+        Arrays.asList(7)), groups);
+  }
+}
@@ -0,0 +1,95 @@
+package org.usergrid.vx.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+
+public class AdmissionControllerUnitTest {
+
+  private static final Vertx vertx = VertxFactory.newVertx();
+
+  private static Handler<Void> count(final AtomicInteger counter) {
+    return new Handler<Void>() {
+      @Override
+      public void handle(Void event) {
+        counter.incrementAndGet();
+      }
+    };
+  }
+
+  @Test
+  public void queuesThenRejects() {
+    AdmissionController admission = new AdmissionController(vertx, 1, 100, 1, 60000);
+    AtomicInteger admitted = new AtomicInteger();
+    AtomicInteger rejected = new AtomicInteger();
+    admission.admit(count(admitted), count(rejected));
+    admission.admit(count(admitted), count(rejected));
+    assertEquals(1, admitted.get());
+    assertEquals(1, admission.queued());
+
+    // the queue is full
+    admission.admit(count(admitted), count(rejected));
+    assertEquals(1, rejected.get());
+
+    admission.release();
+    assertEquals(2, admitted.get());
+    assertEquals(0, admission.queued());
+    assertEquals(1, admission.running());
+  }
+
+  @Test
+  public void rejectsWhenTheWaitTimesOut() throws Exception {
+    AdmissionController admission = new AdmissionController(vertx, 1, 100, 10, 50);
+    AtomicInteger admitted = new AtomicInteger();
+    final CountDownLatch rejected = new CountDownLatch(1);
+    admission.admit(count(admitted), null);
+    admission.admit(count(admitted), new Handler<Void>() {
+      @Override
+      public void handle(Void event) {
+        rejected.countDown();
+      }
+    });
+    assertTrue(rejected.await(5, TimeUnit.SECONDS));
+    assertEquals(0, admission.queued());
+    admission.release();
+    assertEquals(1, admitted.get());
+  }
+
+  @Test
+  public void waitsForStorageOps() {
+    AdmissionController admission = new AdmissionController(vertx, 10, 1, 10, 60000);
+    AtomicInteger admitted = new AtomicInteger();
+    admission.storageOpStarted();
+    admission.admit(count(admitted), null);
+    assertEquals(0, admitted.get());
+    admission.storageOpFinished();
+    assertEquals(1, admitted.get());
+  }
+
+  @Test
+  public void gaugesFollowThePublishedController() {
+    AdmissionController first = new AdmissionController(vertx, 10, 10, 10, 60000);
+    AdmissionController second = new AdmissionController(vertx, 10, 10, 10, 60000);
+    first.admit(count(new AtomicInteger()), null);
+    Gauge<?> running = (Gauge<?>) Metrics.defaultRegistry().allMetrics()
+            .get(new MetricName(AdmissionController.class, "RunningRequests"));
+
+    first.publishMetrics();
+    assertEquals(1, running.value());
+    second.publishMetrics();
+    assertEquals(0, running.value());
+    first.release();
+  }
+}
@@ -0,0 +1,30 @@
+package org.usergrid.vx.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.json.JsonObject;
+
+public class DiagnosticLogUnitTest {
+
+  @Test
+  public void givesEachRequestItsOwnTrace() {
+    assertFalse(DiagnosticLog.newTrace().equals(DiagnosticLog.newTrace()));
+  }
+
+  @Test
+  public void dropsLinesOverTheRate() {
+    JsonObject operation = new JsonObject()
+            .putString(Operations.TYPE, "get")
+            .putNumber(Operations.ID, 3)
+            .putString(Operations.TRACE, DiagnosticLog.newTrace());
+    long before = DiagnosticLog.dropped();
+    for (int i = 0; i < 1000; i++) {
+      DiagnosticLog.failed(operation, new RuntimeException("failure " + i));
+    }
+    // the default rate lets about a hundred failures a second through
+    assertTrue(DiagnosticLog.dropped() - before >= 500);
+  }
+}
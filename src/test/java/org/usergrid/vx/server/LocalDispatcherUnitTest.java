@@ -0,0 +1,71 @@
+package org.usergrid.vx.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.VertxFactory;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+public class LocalDispatcherUnitTest {
+
+  private static final LocalDispatcher dispatcher = new LocalDispatcher(VertxFactory.newVertx());
+
+  @Test
+  public void handsTheBodyOverByReference() throws Exception {
+    final AtomicReference<JsonObject> received = new AtomicReference<JsonObject>();
+    final CountDownLatch replied = new CountDownLatch(1);
+    dispatcher.registerLocalHandler("test.reference", new Handler<Message<JsonObject>>() {
+      @Override
+      public void handle(Message<JsonObject> event) {
+        received.set(event.body());
+        event.reply(event.body());
+      }
+    });
+    final JsonObject body = new JsonObject().putString("a", "b");
+    dispatcher.send("test.reference", body, new Handler<Message<JsonObject>>() {
+      @Override
+      public void handle(Message<JsonObject> event) {
+        assertSame(body, event.body());
+        replied.countDown();
+      }
+    });
+    assertTrue(replied.await(5, TimeUnit.SECONDS));
+    assertSame(body, received.get());
+  }
+
+  @Test
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void deliversRepliesOfAnyTypeAndTheirReplies() throws Exception {
+    final AtomicReference<Object> answer = new AtomicReference<Object>();
+    final CountDownLatch answered = new CountDownLatch(1);
+    dispatcher.registerLocalHandler("test.types", new Handler<Message<JsonObject>>() {
+      @Override
+      public void handle(Message<JsonObject> event) {
+        event.reply("pong", new Handler<Message<Integer>>() {
+          @Override
+          public void handle(Message<Integer> reply) {
+            answer.set(reply.body());
+            answered.countDown();
+          }
+        });
+      }
+    });
+    dispatcher.send("test.types", new JsonObject(), (Handler) new Handler<Message<String>>() {
+      @Override
+      public void handle(Message<String> event) {
+        assertEquals("pong", event.body());
+        event.reply(42);
+      }
+    });
+    assertTrue(answered.await(5, TimeUnit.SECONDS));
+    assertEquals(42, answer.get());
+  }
+}
@@ -0,0 +1,33 @@
+package org.usergrid.vx.server.operations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+import org.usergrid.vx.experimental.Operations;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+public class ColumnDecoderUnitTest {
+
+  @Test
+  public void componentMask() {
+    assertEquals(0, ColumnDecoder.componentMask(null));
+    assertEquals(ColumnDecoder.NAME | ColumnDecoder.VALUE,
+            ColumnDecoder.componentMask(new JsonArray().add("name").add("value")));
+    assertEquals(ColumnDecoder.TIMESTAMP | ColumnDecoder.MARKED_DELETE,
+            ColumnDecoder.componentMask(new JsonArray().add("timestamp").add("markeddelete").add("other")));
+  }
+
+  @Test
+  public void rowKeyUsesAssumedType() {
+    JsonObject state = new JsonObject()
+            .putArray(Operations.COMPONENTS, new JsonArray().add("name"))
+            .putObject("meta", new JsonObject()
+                    .putObject("myks mycf rowkey", new JsonObject().putString("clazz", "UTF8Type")));
+    assertEquals("row1", ColumnDecoder.compile(state, "myks", "mycf").rowKey(ByteBufferUtil.bytes("row1")));
+    assertArrayEquals(ByteBufferUtil.getArray(ByteBufferUtil.bytes("row1")),
+            (byte[]) ColumnDecoder.compile(state, "myks", "othercf").rowKey(ByteBufferUtil.bytes("row1")));
+  }
+}
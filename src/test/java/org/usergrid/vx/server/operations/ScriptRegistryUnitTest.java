@@ -0,0 +1,63 @@
+package org.usergrid.vx.server.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ScriptRegistryUnitTest {
+
+  private static class CountingCompiler implements ScriptRegistry.Compiler<String> {
+    int compiles;
+
+    @Override
+    public String compile(String spec, String source) {
+      compiles++;
+      return spec + ":" + source;
+    }
+  }
+
+  @Test
+  public void createsTheSameScriptOnce() {
+    ScriptRegistry<String> registry = new ScriptRegistry<String>(10);
+    CountingCompiler compiler = new CountingCompiler();
+    assertNull(registry.get("f"));
+    assertTrue(registry.create("f", "groovy", "a", compiler));
+    String first = registry.get("f");
+    assertFalse(registry.create("f", "groovy", "a", compiler));
+    assertEquals(1, compiler.compiles);
+    assertEquals(1, registry.version("f"));
+    assertSame(first, registry.get("f"));
+
+    // another name gets its own instance of the same script
+    assertTrue(registry.create("g", "groovy", "a", compiler));
+    assertEquals(2, compiler.compiles);
+    assertNotSame(first, registry.get("g"));
+    assertSame(first, registry.get("f"));
+  }
+
+  @Test
+  public void swapsInNewVersions() {
+    ScriptRegistry<String> registry = new ScriptRegistry<String>(10);
+    CountingCompiler compiler = new CountingCompiler();
+    registry.create("f", "groovy", "a", compiler);
+    assertFalse(registry.create("f", "groovy", "b", compiler));
+    assertEquals("groovy:b", registry.get("f"));
+    assertEquals(2, registry.version("f"));
+
+    // going back finds the earlier version in the cache
+    registry.create("f", "groovy", "a", compiler);
+    assertEquals("groovy:a", registry.get("f"));
+    assertEquals(3, registry.version("f"));
+    assertEquals(2, compiler.compiles);
+
+    // the language is part of what identifies a script
+    registry.create("f", "javascript", "a", compiler);
+    assertEquals("javascript:a", registry.get("f"));
+    assertEquals(3, compiler.compiles);
+  }
+}
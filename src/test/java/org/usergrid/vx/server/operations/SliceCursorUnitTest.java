@@ -0,0 +1,32 @@
+package org.usergrid.vx.server.operations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+public class SliceCursorUnitTest {
+
+  @Test
+  public void roundTrip() throws Exception {
+    SliceCursor cursor = SliceCursor.decode(new SliceCursor(ByteBufferUtil.bytes("col5"), true).encode());
+    assertEquals("col5", ByteBufferUtil.string(cursor.getLastName()));
+    assertTrue(cursor.isReversed());
+
+    cursor = SliceCursor.decode(new SliceCursor(ByteBufferUtil.EMPTY_BYTE_BUFFER, false).encode());
+    assertEquals(0, cursor.getLastName().remaining());
+    assertFalse(cursor.isReversed());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownDirection() {
+    SliceCursor.decode("2abcd");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonHexName() {
+    SliceCursor.decode("0zz");
+  }
+}